@@ -1,18 +1,19 @@
 package gis.rytis;
 
 import gis.rytis.actions.*;
-import gis.rytis.actions.statistics.AreaStatsAction;
-import gis.rytis.actions.statistics.BuildingStatsAction;
-import gis.rytis.actions.statistics.RoadStatsAction;
+import gis.rytis.actions.statistics.AllMetric;
+import gis.rytis.actions.statistics.AreaMetric;
+import gis.rytis.actions.statistics.AreaRasterMetric;
+import gis.rytis.actions.statistics.BuildingMetric;
+import gis.rytis.actions.statistics.MetricAction;
+import gis.rytis.actions.statistics.RoadMetric;
 import org.geotools.map.MapContent;
 import org.geotools.swing.JMapFrame;
 
 import javax.swing.*;
 import java.io.File;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class Main {
     public static void main(String[] args) throws Exception {
@@ -27,6 +28,7 @@ public class Main {
         window.setSize(1200, 800);
         window.setMapContent(map);
         window.setTitle("GIS");
+        new SelectionOverlay(window.getMapPane());
 
         window.getToolBar().addSeparator();
 
@@ -48,12 +50,14 @@ public class Main {
         window.getToolBar().addSeparator();
 
         window.getToolBar().add((new JLabel("Statistics: ")));
-        window.getToolBar().add(new RoadStatsAction(window.getMapPane()));
-        window.getToolBar().add(new AreaStatsAction(window.getMapPane()));
-        window.getToolBar().add(new BuildingStatsAction(window.getMapPane()));
+        window.getToolBar().add(new MetricAction<>(window.getMapPane(), new RoadMetric()));
+        window.getToolBar().add(new MetricAction<>(window.getMapPane(), new AreaMetric()));
+        window.getToolBar().add(new MetricAction<>(window.getMapPane(), new AreaRasterMetric()));
+        window.getToolBar().add(new MetricAction<>(window.getMapPane(), new BuildingMetric()));
+        window.getToolBar().add(new MetricAction<>(window.getMapPane(), new AllMetric()));
 
         if (args.length > 0) {
-            findFiles(new File(args[0]), "shp")
+            Utilities.findFiles(new File(args[0]), "shp")
                     .filter(File::exists)
                     .map(Utilities::createLayers)
                     .flatMap(Collection::stream)
@@ -63,20 +67,4 @@ public class Main {
 
         window.setVisible(true);
     }
-
-    private static Stream<File> findFiles(File path, String extension) {
-        if (!path.exists()) {
-            return Stream.empty();
-        }
-
-        final File[] files = path.listFiles();
-        if (files == null) {
-            return Stream.empty();
-        }
-
-        final String lowerExtension = extension.toLowerCase();
-        return Arrays.asList(files).stream()
-                .filter(it -> it.getName().toLowerCase().endsWith("." + lowerExtension));
-    }
-
 }
\ No newline at end of file
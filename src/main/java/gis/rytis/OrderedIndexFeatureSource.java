@@ -0,0 +1,45 @@
+package gis.rytis;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.geotools.data.Query;
+import org.geotools.data.collection.CollectionFeatureSource;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.collection.SpatialIndexFeatureCollection;
+import org.geotools.data.collection.SpatialIndexFeatureSource;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.filter.visitor.ExtractBoundsFilterVisitor;
+import org.opengis.filter.Filter;
+
+import java.io.IOException;
+
+/**
+ * Memory source of a derived layer. Queries of an area go through the STR-tree, everything else (the attribute
+ * table, selection by ID) reads the features in the order the layer was made, which the tree does not keep.
+ */
+class OrderedIndexFeatureSource extends SpatialIndexFeatureSource {
+    private final CollectionFeatureSource ordered;
+
+    OrderedIndexFeatureSource(SpatialIndexFeatureCollection indexed, ListFeatureCollection ordered) {
+        super(indexed);
+        this.ordered = new CollectionFeatureSource(ordered);
+    }
+
+    @Override
+    public SimpleFeatureCollection getFeatures() throws IOException {
+        return getFeatures(Query.ALL);
+    }
+
+    @Override
+    public SimpleFeatureCollection getFeatures(Filter filter) throws IOException {
+        return getFeatures(new Query(getSchema().getTypeName(), filter));
+    }
+
+    @Override
+    public SimpleFeatureCollection getFeatures(Query query) throws IOException {
+        Envelope bounds = (Envelope) query.getFilter().accept(ExtractBoundsFilterVisitor.BOUNDS_VISITOR, null);
+        if (bounds == null || Double.isInfinite(bounds.getWidth()) || Double.isInfinite(bounds.getHeight())) {
+            return ordered.getFeatures(query);
+        }
+        return super.getFeatures(query);
+    }
+}
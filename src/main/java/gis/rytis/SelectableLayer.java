@@ -1,10 +1,12 @@
 package gis.rytis;
 
+import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.MultiLineString;
 import com.vividsolutions.jts.geom.MultiPolygon;
 import com.vividsolutions.jts.geom.Polygon;
 import org.geotools.data.FeatureSource;
+import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.store.EmptyFeatureCollection;
 import org.geotools.factory.CommonFactoryFinder;
@@ -12,30 +14,44 @@ import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.map.FeatureLayer;
 import org.geotools.map.event.MapLayerEvent;
 import org.geotools.styling.*;
+import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
-import org.opengis.filter.identity.FeatureId;
 
 import java.awt.*;
 import java.awt.geom.Rectangle2D;
+import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class SelectableLayer extends FeatureLayer {
-    Rule selectedRule, defaultRule;
+    Rule defaultRule;
 
     static StyleFactory styleFactory = CommonFactoryFinder.getStyleFactory();
     private FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
 
-    private Set<FeatureId> selectedFeatures = new HashSet<>();
+    // Which features are selected as bits: shapefile IDs are <type name>.<record number>, other IDs are numbered
+    // as first selected
+    private BitSet selectedRecords = new BitSet();
+    private BitSet selectedOthers = new BitSet();
+    private Map<String, Integer> otherNumbers = new HashMap<>();
+    // The selected features themselves and their bounds, kept up to date as features are selected. The list is
+    // replaced, never changed, so collections handed out over it stay as they were.
+    private List<SimpleFeature> selectedFeatures = Collections.emptyList();
+    private ReferencedEnvelope selectionBounds;
+    private int selectionVersion;
+
+    private File sourceFile;
 
     public SelectableLayer(String layerTitle, FeatureSource featureSource, Color primaryColor, Color secondaryColor) {
         super(featureSource, null);
-        Color selectedPrimaryColor = Color.YELLOW.darker();
-        Color selectedSecondaryColor = selectedPrimaryColor.brighter();
         setTitle(layerTitle);
 
         SimpleFeatureType schema = (SimpleFeatureType)featureSource.getSchema();
@@ -44,46 +60,117 @@ public class SelectableLayer extends FeatureLayer {
 
         if (Polygon.class.isAssignableFrom(geomType)
                 || MultiPolygon.class.isAssignableFrom(geomType)) {
-            selectedRule = createPolygonRule(selectedPrimaryColor, selectedSecondaryColor);
             defaultRule = createPolygonRule(primaryColor, secondaryColor);
         } else if (LineString.class.isAssignableFrom(geomType)
                 || MultiLineString.class.isAssignableFrom(geomType)) {
-            selectedRule = createLineRule(selectedPrimaryColor);
             defaultRule = createLineRule(primaryColor);
         } else {
-            selectedRule = createPointRule(selectedPrimaryColor, selectedSecondaryColor);
             defaultRule = createPointRule(primaryColor, secondaryColor);
         }
 
-        updateStyle();
+        setStyle(createStyle());
     }
 
     public void newSelection(SimpleFeatureCollection selection) {
-        selectedFeatures.clear();
-        addSelection(selection);
+        select(selection, true);
     }
 
     public void addSelection(SimpleFeatureCollection selection) {
+        select(selection, false);
+    }
+
+    private void select(SimpleFeatureCollection selection, boolean replace) {
         if (selection == null) {
             System.out.println("No features to select");
             return;
         }
-        Set<FeatureId> selectionIDs = new HashSet<>();
+        // Collected aside first, a failed read leaves the selection as it was
+        BitSet records = replace ? new BitSet() : (BitSet) selectedRecords.clone();
+        BitSet others = replace ? new BitSet() : (BitSet) selectedOthers.clone();
+        Map<String, Integer> numbers = replace ? new HashMap<>() : otherNumbers;
+        List<SimpleFeature> features = replace ? new ArrayList<>() : new ArrayList<>(selectedFeatures);
+        ReferencedEnvelope bounds = replace || selectionBounds == null ?
+                new ReferencedEnvelope(getSimpleFeatureSource().getSchema().getCoordinateReferenceSystem()) :
+                new ReferencedEnvelope(selectionBounds);
+        int selectedBefore = features.size();
+        String prefix = getSimpleFeatureSource().getSchema().getTypeName() + ".";
         try {
-            selection.accepts(x -> selectionIDs.add(x.getIdentifier()), null);
+            selection.accepts(x -> {
+                String id = x.getIdentifier().getID();
+                int record = recordNumber(id, prefix);
+                BitSet bits = record >= 0 ? records : others;
+                int bit = record >= 0 ? record : otherNumber(numbers, id);
+                if (!bits.get(bit)) {
+                    bits.set(bit);
+                    SimpleFeature sf = (SimpleFeature) x;
+                    features.add(sf);
+                    Geometry geometry = (Geometry) sf.getDefaultGeometry();
+                    if (geometry != null) {
+                        bounds.expandToInclude(geometry.getEnvelopeInternal());
+                    }
+                }
+            }, null);
         } catch (IOException e) {
             System.out.println("Error adding features: " + e);
             return;
         }
-        selectedFeatures.addAll(selectionIDs);
-        updateStyle();
-        System.out.println("Added features: " + selectionIDs.size());
-        System.out.println("Current selected features in this layer: " + selectedFeatures.size());
+        selectedRecords = records;
+        selectedOthers = others;
+        otherNumbers = numbers;
+        selectedFeatures = Collections.unmodifiableList(features);
+        selectionBounds = bounds;
+        selectionChanged();
+        System.out.println("Added features: " + (features.size() - selectedBefore));
+        System.out.println("Current selected features in this layer: " + getSelectionSize());
     }
 
     public void deselectFeatures() {
-        selectedFeatures.clear();
-        updateStyle();
+        selectedRecords.clear();
+        selectedOthers.clear();
+        otherNumbers = new HashMap<>();
+        selectedFeatures = Collections.emptyList();
+        selectionBounds = null;
+        selectionChanged();
+    }
+
+    // Only SelectionOverlay draws the selection, the style and so the rendered layer stay the same
+    private void selectionChanged() {
+        selectionVersion++;
+        fireMapLayerListenerLayerChanged(MapLayerEvent.SELECTION_CHANGED);
+    }
+
+    // Changes with every change of the selection
+    public int getSelectionVersion() {
+        return selectionVersion;
+    }
+
+    public int getSelectionSize() {
+        return selectedFeatures.size();
+    }
+
+    // Record number of a shapefile feature ID, -1 for any other ID
+    private static int recordNumber(String id, String prefix) {
+        if (!id.startsWith(prefix) || id.length() == prefix.length() || id.length() - prefix.length() > 9) {
+            return -1;
+        }
+        int result = 0;
+        for (int i = prefix.length(); i < id.length(); ++i) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static int otherNumber(Map<String, Integer> numbers, String id) {
+        Integer number = numbers.get(id);
+        if (number == null) {
+            number = numbers.size();
+            numbers.put(id, number);
+        }
+        return number;
     }
 
     public SimpleFeatureCollection findFeaturesCrossingBox(Rectangle2D box) {
@@ -98,40 +185,22 @@ public class SelectableLayer extends FeatureLayer {
         }
     }
 
+    // The kept features, nothing is read again
     public SimpleFeatureCollection getSelectedFeatures() {
+        SimpleFeatureType schema = getSimpleFeatureSource().getSchema();
         if (selectedFeatures.isEmpty()) {
-            return new EmptyFeatureCollection(getSimpleFeatureSource().getSchema());
-        }
-        try {
-            return getSimpleFeatureSource().getFeatures(ff.id(selectedFeatures));
-        } catch (IOException e) {
-            System.out.println("Error: " + e);
-            return new EmptyFeatureCollection(getSimpleFeatureSource().getSchema());
+            return new EmptyFeatureCollection(schema);
         }
+        return new ListFeatureCollection(schema, selectedFeatures);
     }
 
     public ReferencedEnvelope getSelectionBounds() {
-        SimpleFeatureCollection featureCollection = getSelectedFeatures();
-        if (!featureCollection.isEmpty()) {
-            return featureCollection.getBounds();
-        } else {
-            return null;
-        }
-    }
-
-    private void updateStyle() {
-        setStyle(createStyle());
+        return selectedFeatures.isEmpty() ? null : new ReferencedEnvelope(selectionBounds);
     }
 
     private Style createStyle() {
         FeatureTypeStyle fts = styleFactory.createFeatureTypeStyle();
 
-        if (selectedFeatures.size() > 0) {
-            selectedRule.setFilter(ff.id(selectedFeatures));
-            fts.rules().add(selectedRule);
-        }
-
-        defaultRule.setElseFilter(true);
         fts.rules().add(defaultRule);
 
         Style style = styleFactory.createStyle();
@@ -208,23 +277,12 @@ public class SelectableLayer extends FeatureLayer {
         return rule;
     }
 
-    @Override
-    public void setStyle(Style style) {
-        if (style == null) {
-            throw new NullPointerException("Style is required");
-        }
-
-        if (style.featureTypeStyles().size() == 1) {
-            if (style.featureTypeStyles().get(0).rules().size() == 1) {
-                defaultRule = style.featureTypeStyles().get(0).rules().get(0);
-                if (selectedFeatures.size() > 0) {
-                    updateStyle();
-                    return;
-                }
-            }
-        }
+    // Shapefile the layer was read from, null for layers made in memory
+    public File getSourceFile() {
+        return sourceFile;
+    }
 
-        this.style = style;
-        fireMapLayerListenerLayerChanged(MapLayerEvent.STYLE_CHANGED);
+    public void setSourceFile(File sourceFile) {
+        this.sourceFile = sourceFile;
     }
 }
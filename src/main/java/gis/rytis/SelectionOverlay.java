@@ -0,0 +1,282 @@
+package gis.rytis;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.map.Layer;
+import org.geotools.map.MapContent;
+import org.geotools.map.event.MapLayerListEvent;
+import org.geotools.map.event.MapLayerListListener;
+import org.geotools.swing.MapPane;
+import org.geotools.swing.event.MapPaneAdapter;
+import org.geotools.swing.event.MapPaneEvent;
+import org.geotools.swing.tool.PanTool;
+import org.opengis.feature.simple.SimpleFeature;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Selected features of every visible SelectableLayer drawn over the map pane. The map pane keeps its rendered
+ * image when the selection changes; only this component is repainted, from shapes made once per selection by a
+ * SwingWorker. Until the shapes of a new selection are ready the previous ones stay on the map.
+ */
+public class SelectionOverlay extends JComponent implements MapLayerListListener {
+    private static final Color PRIMARY_COLOR = Color.YELLOW.darker();
+    private static final Color SECONDARY_COLOR = new Color(PRIMARY_COLOR.brighter().getRGB() & 0xffffff | 0x80000000, true);
+    private static final double POINT_SIZE = 5;
+
+    private static class Selection {
+        private int version;
+        // In map coordinates
+        private final Path2D.Double areas = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+        private final Path2D.Double lines = new Path2D.Double();
+        private final List<Point2D> points = new ArrayList<>();
+    }
+
+    private final MapPane mapPane;
+    private final Map<SelectableLayer, Selection> selections = new WeakHashMap<>();
+    // Selection version each layer's shapes are being made for
+    private final Map<SelectableLayer, Integer> building = new WeakHashMap<>();
+    private MapContent mapContent;
+    // The pan tool moves the rendered image without changing the transform until the display area is set again,
+    // the overlay is hidden in between instead of staying behind. Both only touched on the EDT.
+    private boolean panning;
+    private boolean imageMoved;
+
+    public SelectionOverlay(MapPane mapPane) {
+        this.mapPane = mapPane;
+        setOpaque(false);
+
+        // Without mouse listeners of its own the overlay passes every mouse event to the map pane under it
+        JComponent component = (JComponent) mapPane;
+        component.setLayout(new BorderLayout());
+        component.add(this, BorderLayout.CENTER);
+
+        component.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                panning = mapPane.getCursorTool() instanceof PanTool;
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                if (panning) {
+                    panning = false;
+                    repaint();
+                }
+            }
+        });
+        component.addMouseMotionListener(new MouseAdapter() {
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (panning && !imageMoved) {
+                    imageMoved = true;
+                    repaint();
+                }
+            }
+        });
+
+        listenTo(mapPane.getMapContent());
+        mapPane.addMapPaneListener(new MapPaneAdapter() {
+            @Override
+            public void onNewMapContent(MapPaneEvent ev) {
+                listenTo(mapPane.getMapContent());
+                repaint();
+            }
+
+            @Override
+            public void onDisplayAreaChanged(MapPaneEvent ev) {
+                SwingUtilities.invokeLater(() -> {
+                    imageMoved = false;
+                    repaint();
+                });
+            }
+
+            @Override
+            public void onRenderingStopped(MapPaneEvent ev) {
+                repaint();
+            }
+        });
+    }
+
+    private void listenTo(MapContent content) {
+        if (mapContent != null) {
+            mapContent.removeMapLayerListListener(this);
+        }
+        mapContent = content;
+        if (mapContent != null) {
+            mapContent.addMapLayerListListener(this);
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        AffineTransform worldToScreen = mapPane.getWorldToScreenTransform();
+        if (mapContent == null || worldToScreen == null || panning || imageMoved) {
+            return;
+        }
+
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        for (Layer layer : mapContent.layers()) {
+            if (!(layer instanceof SelectableLayer) || !layer.isVisible()) {
+                continue;
+            }
+            Selection selection = getSelection((SelectableLayer) layer);
+            if (selection == null) {
+                continue;
+            }
+
+            Shape areas = worldToScreen.createTransformedShape(selection.areas);
+            g2.setColor(SECONDARY_COLOR);
+            g2.fill(areas);
+            g2.setColor(PRIMARY_COLOR);
+            g2.setStroke(new BasicStroke(1));
+            g2.draw(areas);
+
+            g2.setStroke(new BasicStroke(2));
+            g2.draw(worldToScreen.createTransformedShape(selection.lines));
+
+            g2.setStroke(new BasicStroke(1));
+            Point2D screen = new Point2D.Double();
+            for (Point2D point : selection.points) {
+                worldToScreen.transform(point, screen);
+                Shape mark = new Ellipse2D.Double(screen.getX() - POINT_SIZE / 2, screen.getY() - POINT_SIZE / 2, POINT_SIZE, POINT_SIZE);
+                g2.setColor(PRIMARY_COLOR.brighter());
+                g2.fill(mark);
+                g2.setColor(PRIMARY_COLOR);
+                g2.draw(mark);
+            }
+        }
+        g2.dispose();
+    }
+
+    // Shapes of the layer's selection as last made, null when nothing is selected or they are not made yet.
+    // A change of the selection starts making them again off the EDT.
+    private Selection getSelection(SelectableLayer layer) {
+        if (layer.getSelectionSize() == 0) {
+            selections.remove(layer);
+            return null;
+        }
+        Selection selection = selections.get(layer);
+        int version = layer.getSelectionVersion();
+        if ((selection == null || selection.version != version) && !Integer.valueOf(version).equals(building.get(layer))) {
+            build(layer, version);
+        }
+        return selection;
+    }
+
+    private void build(SelectableLayer layer, int version) {
+        building.put(layer, version);
+        // The layer keeps its selected features in memory and never changes a list it handed out
+        SimpleFeatureCollection features = layer.getSelectedFeatures();
+        new SwingWorker<Selection, Void>() {
+            @Override
+            protected Selection doInBackground() {
+                Selection selection = new Selection();
+                selection.version = version;
+                try (SimpleFeatureIterator iterator = features.features()) {
+                    while (iterator.hasNext()) {
+                        SimpleFeature sf = iterator.next();
+                        Geometry geometry = (Geometry) sf.getDefaultGeometry();
+                        if (geometry != null) {
+                            add(selection, geometry);
+                        }
+                    }
+                }
+                return selection;
+            }
+
+            @Override
+            protected void done() {
+                building.remove(layer, version);
+                // A newer selection has its own worker started by the repaint that came with it
+                if (version != layer.getSelectionVersion()) {
+                    return;
+                }
+                try {
+                    selections.put(layer, get());
+                    repaint();
+                } catch (InterruptedException | ExecutionException e) {
+                    System.out.println("Error drawing selection: " + e);
+                }
+            }
+        }.execute();
+    }
+
+    private static void add(Selection selection, Geometry geometry) {
+        for (int i = 0; i < geometry.getNumGeometries(); ++i) {
+            Geometry part = geometry.getGeometryN(i);
+            if (part instanceof Polygon) {
+                Polygon polygon = (Polygon) part;
+                addPath(selection.areas, polygon.getExteriorRing().getCoordinates(), true);
+                for (int j = 0; j < polygon.getNumInteriorRing(); ++j) {
+                    addPath(selection.areas, polygon.getInteriorRingN(j).getCoordinates(), true);
+                }
+            } else if (part instanceof LineString) {
+                addPath(selection.lines, part.getCoordinates(), false);
+            } else if (part instanceof Point) {
+                selection.points.add(new Point2D.Double(((Point) part).getX(), ((Point) part).getY()));
+            } else if (part instanceof GeometryCollection) {
+                add(selection, part);
+            }
+        }
+    }
+
+    private static void addPath(Path2D path, Coordinate[] coordinates, boolean closed) {
+        if (coordinates.length == 0) {
+            return;
+        }
+        path.moveTo(coordinates[0].x, coordinates[0].y);
+        for (int i = 1; i < coordinates.length; ++i) {
+            path.lineTo(coordinates[i].x, coordinates[i].y);
+        }
+        if (closed) {
+            path.closePath();
+        }
+    }
+
+    @Override
+    public void layerAdded(MapLayerListEvent event) {
+        repaint();
+    }
+
+    @Override
+    public void layerRemoved(MapLayerListEvent event) {
+        repaint();
+    }
+
+    // Selection changes come as SELECTION_CHANGED, which the map pane does not render again for
+    @Override
+    public void layerChanged(MapLayerListEvent event) {
+        repaint();
+    }
+
+    @Override
+    public void layerMoved(MapLayerListEvent event) {
+        repaint();
+    }
+
+    @Override
+    public void layerPreDispose(MapLayerListEvent event) {
+        selections.remove(event.getElement());
+        building.remove(event.getElement());
+    }
+}
@@ -0,0 +1,114 @@
+package gis.rytis;
+
+import gis.rytis.actions.statistics.AllMetric;
+import gis.rytis.actions.statistics.AreaMetric;
+import gis.rytis.actions.statistics.AreaRasterMetric;
+import gis.rytis.actions.statistics.BuildingMetric;
+import gis.rytis.actions.statistics.CsvResultWriter;
+import gis.rytis.actions.statistics.RegionAggregator;
+import gis.rytis.actions.statistics.RegionMetric;
+import gis.rytis.actions.statistics.ResultTable;
+import gis.rytis.actions.statistics.RoadMetric;
+import gis.rytis.actions.statistics.StatisticsRun;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Headless entry point for the region statistics, e.g. for nightly jobs:
+ * java -cp ... gis.rytis.StatisticsBatch <shapefile directory> <roads|areas|areas-raster|buildings|all> <output.csv>
+ * Metrics with several tables ("all") write every table next to the output file, e.g. output-roads.csv.
+ */
+public class StatisticsBatch {
+    private static final List<RegionMetric<?, ?>> METRICS = Arrays.asList(
+            new RoadMetric(), new AreaMetric(), new AreaRasterMetric(), new BuildingMetric(), new AllMetric());
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        String names = METRICS.stream().map(RegionMetric::getName).collect(Collectors.joining("|"));
+        if (args.length < 3) {
+            System.out.println("Usage: StatisticsBatch <shapefile directory> <" + names + "> <output.csv>");
+            System.exit(2);
+        }
+
+        File directory = new File(args[0]);
+        String metricName = args[1].toLowerCase();
+        File output = new File(args[2]);
+
+        Optional<RegionMetric<?, ?>> metric = METRICS.stream().filter(x -> x.getName().equals(metricName)).findFirst();
+        if (!metric.isPresent()) {
+            System.out.println("Unknown statistics: " + metricName + " (expected " + names + ")");
+            System.exit(2);
+        }
+
+        List<SelectableLayer> layers = Utilities.findFiles(directory, "shp")
+                .filter(File::exists)
+                .map(Utilities::createLayers)
+                .flatMap(Collection::stream)
+                .collect(Collectors.toList());
+
+        boolean success;
+        try {
+            success = run(metric.get(), layers, output);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            success = false;
+        }
+
+        System.exit(success ? 0 : 1);
+    }
+
+    private static <A, R extends Serializable> boolean run(RegionMetric<A, R> metric, List<SelectableLayer> layers,
+                                                           File output) throws IOException, InterruptedException {
+        SelectableLayer regionLayer = RegionAggregator.requireLayer(layers, RegionMetric.REGIONS);
+        List<SelectableLayer> inputs = RegionAggregator.requireInputs(metric, layers);
+
+        List<ResultTable<R>> tables = metric.getTables();
+        List<Writer> writers = new ArrayList<>();
+        try {
+            List<CsvResultWriter<R>> csvs = new ArrayList<>();
+            for (ResultTable<R> table : tables) {
+                Writer writer = open(output, tables.size() > 1 ? table.getName() : null);
+                writers.add(writer);
+                csvs.add(new CsvResultWriter<>(writer, table.getColumnNames(), table::toRow));
+            }
+
+            StatisticsRun<R> run = new StatisticsRun<>();
+            run.start(regionLayer, RegionAggregator.prepare(metric, inputs, run), StatisticsRun.combined(csvs));
+
+            boolean success = true;
+            for (CsvResultWriter<R> csv : csvs) {
+                success &= csv.await();
+            }
+            return success;
+        } finally {
+            for (Writer writer : writers) {
+                writer.close();
+            }
+        }
+    }
+
+    // Output file itself, or output-<suffix>.csv next to it
+    private static Writer open(File output, String suffix) throws IOException {
+        File file = output;
+        if (suffix != null) {
+            String name = output.getName();
+            if (name.toLowerCase().endsWith(".csv")) {
+                name = name.substring(0, name.length() - 4);
+            }
+            file = new File(output.getAbsoluteFile().getParentFile(), name + "-" + suffix + ".csv");
+        }
+        return Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+    }
+}
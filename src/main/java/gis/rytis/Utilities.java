@@ -3,15 +3,21 @@ package gis.rytis;
 import com.vividsolutions.jts.geom.*;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
 import org.geotools.data.DataStore;
 import org.geotools.data.DataStoreFinder;
-import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.collection.SpatialIndexFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.map.FeatureLayer;
+import org.geotools.map.Layer;
 import org.geotools.swing.MapPane;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 
 import java.awt.*;
 import java.io.File;
@@ -19,6 +25,7 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.*;
 import java.util.List;
+import java.util.stream.Stream;
 
 public class Utilities {
     public enum LayerType{
@@ -36,8 +43,19 @@ public class Utilities {
             Color.GRAY};
     public static int colorIter = 0;
 
+    // -Dgis.debug=true prints how long indexes, rasters, cached results and search stages took
+    public static final boolean DEBUG = Boolean.getBoolean("gis.debug");
+
+    private static final GeometryFactory packedFactory = new GeometryFactory(PackedCoordinateSequenceFactory.DOUBLE_FACTORY);
+
+    private static final String[] SHAPEFILE_PARTS = {"shp", "shx", "dbf", "prj", "cpg"};
+
     public static Optional<SelectableLayer> findLayerByName(MapPane mapPane, String layerName) {
-        return mapPane.getMapContent().layers().stream()
+        return findLayerByName(mapPane.getMapContent().layers(), layerName);
+    }
+
+    public static Optional<SelectableLayer> findLayerByName(Collection<? extends Layer> layers, String layerName) {
+        return layers.stream()
                 .filter(x -> x instanceof SelectableLayer)
                 .map(x -> (SelectableLayer) x)
                 .filter(x -> x.getTitle().toLowerCase().contains(layerName.toLowerCase()))
@@ -83,6 +101,21 @@ public class Utilities {
         }
     }
 
+    public static Stream<File> findFiles(File path, String extension) {
+        if (!path.exists()) {
+            return Stream.empty();
+        }
+
+        final File[] files = path.listFiles();
+        if (files == null) {
+            return Stream.empty();
+        }
+
+        final String lowerExtension = extension.toLowerCase();
+        return Arrays.asList(files).stream()
+                .filter(it -> it.getName().toLowerCase().endsWith("." + lowerExtension));
+    }
+
     public static List<SelectableLayer> createLayers(File file) {
         List<SelectableLayer> layers = new ArrayList<>();
 
@@ -101,6 +134,7 @@ public class Utilities {
                 String layerTitle = file.getName() + "#" + typeName;
 
                 SelectableLayer layer = createLayer(featureSource, layerTitle);
+                layer.setSourceFile(file);
                 layers.add(layer);
             }
 
@@ -112,10 +146,55 @@ public class Utilities {
         return layers;
     }
 
+    // Path, size and modification time of every part of a shapefile, changes whenever the file is edited
+    public static String getFingerprint(File shapefile) {
+        StringBuilder result = new StringBuilder();
+        String base = shapefile.getAbsolutePath().replaceFirst("\\.[^.\\\\/]*$", "");
+        for (String part : SHAPEFILE_PARTS) {
+            for (String extension : Arrays.asList(part, part.toUpperCase())) {
+                File partFile = new File(base + "." + extension);
+                if (partFile.isFile()) {
+                    result.append(partFile.getPath()).append(':').append(partFile.length())
+                            .append(':').append(partFile.lastModified()).append(';');
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    public static void debug(String message) {
+        if (DEBUG) {
+            System.out.println(message);
+        }
+    }
+
+    // Derived layers are copied into memory behind an STR-tree, so map and filter queries only visit the
+    // features around their bbox, other reads keep the order of the collection. Coordinates are packed into
+    // one double array per geometry.
     public static SelectableLayer createLayer(SimpleFeatureCollection features, String layerTitle) {
-        SimpleFeatureSource indexedSource = DataUtilities.source(features);
+        SimpleFeatureType schema = features.getSchema();
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(schema);
+        List<SimpleFeature> packed = new ArrayList<>();
+        try (SimpleFeatureIterator iterator = features.features()) {
+            while (iterator.hasNext()) {
+                SimpleFeature sf = iterator.next();
+                builder.init(sf);
+                Geometry geometry = (Geometry) sf.getDefaultGeometry();
+                if (geometry != null) {
+                    builder.set(schema.getGeometryDescriptor().getLocalName(), packedFactory.createGeometry(geometry));
+                }
+                packed.add(builder.buildFeature(sf.getID()));
+            }
+        }
 
-        return createLayer(indexedSource, layerTitle);
+        SpatialIndexFeatureCollection indexed = new SpatialIndexFeatureCollection(schema);
+        indexed.addAll(packed);
+        if (!packed.isEmpty()) {
+            // The STR-tree builds itself on its first use, which is not thread safe. getBounds() goes through the
+            // tree root, so it is built here and not by the renderer thread and the EDT at the same time.
+            indexed.getBounds();
+        }
+        return createLayer(new OrderedIndexFeatureSource(indexed, new ListFeatureCollection(schema, packed)), layerTitle);
     }
 
     public static SelectableLayer createLayer(SimpleFeatureSource source, String layerTitle) {
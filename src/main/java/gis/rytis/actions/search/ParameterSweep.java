@@ -0,0 +1,189 @@
+package gis.rytis.actions.search;
+
+import com.vividsolutions.jts.geom.Geometry;
+import gis.rytis.Utilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.opengis.feature.simple.SimpleFeature;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Park search for every combination of a set of parameter values. The thresholds other than the distance to
+ * road only drop forests one by one, so the search is run once per distance with the loosest of them and every
+ * combination is answered from its forests. The forests of the largest distance are searched first, a smaller
+ * distance only cuts them again with the buffers of the roads around them; the river and height filters run
+ * for each distance, the peaks are found once.
+ */
+public class ParameterSweep {
+
+    public static class Row {
+        private final SearchParameters parameters;
+        private final Candidate forest;
+
+        private Row(SearchParameters parameters, Candidate forest) {
+            this.parameters = parameters;
+            this.forest = forest;
+        }
+
+        public SearchParameters getParameters() {
+            return parameters;
+        }
+
+        public String getForestID() {
+            return forest.id;
+        }
+
+        public double getArea() {
+            return forest.area;
+        }
+
+        public double getRiverWidth() {
+            return forest.riverWidth;
+        }
+
+        public double getHeightDiff() {
+            return forest.heightDiff;
+        }
+
+        public int getPeaks() {
+            return forest.peaks;
+        }
+    }
+
+    private static class Candidate {
+        private String id;
+        private double area;
+        private double riverWidth;
+        private double heightDiff;
+        private int peaks;
+    }
+
+    private final double[] minAreaSizes;
+    private final double[] distancesToRoad;
+    private final double[] minRiverWidths;
+    private final double[] heightDiffs;
+
+    public ParameterSweep(double[] minAreaSizes, double[] distancesToRoad, double[] minRiverWidths, double[] heightDiffs) {
+        this.minAreaSizes = minAreaSizes;
+        this.distancesToRoad = distancesToRoad;
+        this.minRiverWidths = minRiverWidths;
+        this.heightDiffs = heightDiffs;
+    }
+
+    // "500", "5, 10, 20" or "100..1000/100" (from..to/step, to included)
+    public static double[] parseValues(String text) {
+        text = text.trim();
+        if (text.contains("..")) {
+            String[] range = text.split("\\.\\.|/");
+            if (range.length != 3) {
+                throw new IllegalArgumentException("range must look like 100..1000/100: " + text);
+            }
+            double from = Double.valueOf(range[0].trim());
+            double to = Double.valueOf(range[1].trim());
+            double step = Double.valueOf(range[2].trim());
+            if (step <= 0 || to < from) {
+                throw new IllegalArgumentException("empty range: " + text);
+            }
+            int count = (int) Math.floor((to - from) / step + 1e-9) + 1;
+            double[] result = new double[count];
+            for (int i = 0; i < count; ++i) {
+                result[i] = from + i * step;
+            }
+            return result;
+        }
+        return Arrays.stream(text.split(",")).mapToDouble(x -> Double.valueOf(x.trim())).distinct().sorted().toArray();
+    }
+
+    public int getCombinationCount() {
+        return minAreaSizes.length * distancesToRoad.length * minRiverWidths.length * heightDiffs.length;
+    }
+
+    // The smallest thresholds, their results contain the results of every other combination
+    public SearchParameters getLoosest() {
+        return new SearchParameters(min(minAreaSizes), min(distancesToRoad), min(minRiverWidths), min(heightDiffs));
+    }
+
+    public int getDistanceCount() {
+        return distancesToRoad.length;
+    }
+
+    // onRows gets the rows of each distance as soon as they are ready, from a pool thread
+    public CompletableFuture<Void> run(ParkSearch search, Consumer<List<Row>> onRows) {
+        SearchParameters loosest = getLoosest();
+        ParkSearch widest = search.withParameters(new SearchParameters(loosest.getMinAreaSize(), max(distancesToRoad),
+                loosest.getMinRiverWidth(), loosest.getHeightDiff()));
+        List<CompletableFuture<Void>> distances = new ArrayList<>();
+        for (double distanceToRoad : distancesToRoad) {
+            ParkSearch distanceSearch = widest.withDistanceToRoad(distanceToRoad);
+            distances.add(distanceSearch.getResult().getFeatures()
+                    .thenApplyAsync(forests -> combinations(distanceSearch, distanceToRoad, forests), SearchExecutor.getPool())
+                    .thenAccept(onRows));
+        }
+        return CompletableFuture.allOf(distances.toArray(new CompletableFuture[0]));
+    }
+
+    private List<Row> combinations(ParkSearch search, double distanceToRoad, SimpleFeatureCollection forests) {
+        List<Candidate> candidates = new ArrayList<>();
+        List<Geometry> geometries = new ArrayList<>();
+        try (SimpleFeatureIterator iterator = forests.features()) {
+            while (iterator.hasNext()) {
+                SimpleFeature sf = iterator.next();
+                Geometry geometry = (Geometry) sf.getDefaultGeometry();
+                Candidate candidate = new Candidate();
+                candidate.id = sf.getID();
+                candidate.area = geometry.getArea();
+                candidate.heightDiff = ((Number) sf.getAttribute("HeightDiff")).doubleValue();
+                candidate.peaks = ((Number) sf.getAttribute("PeaksQty")).intValue();
+                candidates.add(candidate);
+                geometries.add(geometry);
+            }
+        }
+
+        try {
+            double[] riverWidths = search.getWidestRivers(geometries, search.getParameters().getMinRiverWidth());
+            for (int i = 0; i < riverWidths.length; ++i) {
+                candidates.get(i).riverWidth = riverWidths[i];
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // Sorted once, the forests above a height threshold are then a prefix of the list
+        candidates.sort(Comparator.comparingDouble((Candidate x) -> x.heightDiff).reversed());
+
+        List<Row> rows = new ArrayList<>();
+        for (double heightDiff : heightDiffs) {
+            for (double minAreaSize : minAreaSizes) {
+                for (double minRiverWidth : minRiverWidths) {
+                    SearchParameters parameters = new SearchParameters(minAreaSize, distanceToRoad, minRiverWidth, heightDiff);
+                    for (Candidate candidate : candidates) {
+                        if (candidate.heightDiff <= heightDiff) {
+                            break;
+                        }
+                        if (candidate.area >= minAreaSize && candidate.riverWidth > minRiverWidth) {
+                            rows.add(new Row(parameters, candidate));
+                        }
+                    }
+                }
+            }
+        }
+        Utilities.debug("Sweep of distance " + distanceToRoad + " m: " + candidates.size() + " forests, " + rows.size() + " rows");
+        return rows;
+    }
+
+    private static double min(double[] values) {
+        return Arrays.stream(values).min().getAsDouble();
+    }
+
+    private static double max(double[] values) {
+        return Arrays.stream(values).max().getAsDouble();
+    }
+}
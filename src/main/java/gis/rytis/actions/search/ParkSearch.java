@@ -0,0 +1,541 @@
+package gis.rytis.actions.search;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.operation.union.UnaryUnionOp;
+import gis.rytis.SelectableLayer;
+import gis.rytis.Utilities;
+import gis.rytis.actions.statistics.ResultCache;
+import gis.rytis.spatial.AdjacencyGraph;
+import gis.rytis.spatial.DistanceField;
+import gis.rytis.spatial.IndexedFeature;
+import gis.rytis.spatial.IndexedLayer;
+import gis.rytis.spatial.OverlapUnion;
+import gis.rytis.spatial.RegionCell;
+import gis.rytis.spatial.RegionGrid;
+import gis.rytis.spatial.TiledGeometry;
+import gis.rytis.spatial.ZonalRange;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Park search over one bbox as a graph of stages:
+ * road buffer -> forest intersection -> river filter -> height filter -> forests with peaks <- peaks.
+ * Nothing runs until the features of a stage are asked for, peaks are searched while the forests are filtered.
+ */
+public class ParkSearch {
+
+    public enum Mode {
+        // One road buffer of the whole bbox
+        WHOLE,
+        // The bbox tile by tile, for large areas
+        TILED,
+        // Forests cut by a precomputed distance field of the roads, to within a pixel
+        RASTER
+    }
+
+    private static final int BUFFER_TILE_VERTICES = 2000;
+    // Side of a tile in the tiled mode, in map units (m)
+    public static final double TILE_SIZE = Double.parseDouble(System.getProperty("gis.search.tile", "10000"));
+    // Pixel of the road distance field in the raster mode, in map units (m)
+    public static final double DISTANCE_CELL_SIZE = Double.parseDouble(System.getProperty("gis.search.distance.cell", "10"));
+
+    private FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+    private GeometryFactory gf = JTSFactoryFinder.getGeometryFactory();
+
+    private final SelectableLayer roadLayer;
+    private final SelectableLayer hidroLayer;
+    private final SelectableLayer areaLayer;
+    private final SelectableLayer heightLayer;
+    private final Polygon bboxPoly;
+    private final SearchParameters parameters;
+    private final Mode mode;
+
+    private final SearchStage roads;
+    private final SearchStage roadBuffer;
+    private final SearchStage forestIntersection;
+    private final SearchStage filteredByRivers;
+    private final SearchStage filteredByHeight;
+    private final SearchStage peaks;
+    private final SearchStage forestsPeaks;
+
+    public ParkSearch(SelectableLayer roadLayer, SelectableLayer hidroLayer, SelectableLayer areaLayer,
+                      SelectableLayer heightLayer, Polygon bboxPoly, SearchParameters parameters, Mode mode) {
+        this(roadLayer, hidroLayer, areaLayer, heightLayer, bboxPoly, parameters, mode, null);
+    }
+
+    // widerForests - forest intersection of the same search with a larger distance to road, cut down instead of
+    // buffering every road of the bbox again
+    private ParkSearch(SelectableLayer roadLayer, SelectableLayer hidroLayer, SelectableLayer areaLayer,
+                       SelectableLayer heightLayer, Polygon bboxPoly, SearchParameters parameters, Mode mode,
+                       SearchStage widerForests) {
+        this.roadLayer = roadLayer;
+        this.hidroLayer = hidroLayer;
+        this.areaLayer = areaLayer;
+        this.heightLayer = heightLayer;
+        this.bboxPoly = bboxPoly;
+        this.parameters = parameters;
+        this.mode = mode;
+
+        // Each stage is keyed by what it reads itself, the inputs' keys are added by SearchStage
+        Envelope bbox = bboxPoly.getEnvelopeInternal();
+        Object roadSource = StageCache.sourceKey(roadLayer);
+        Object areaSource = StageCache.sourceKey(areaLayer);
+        Object hidroSource = StageCache.sourceKey(hidroLayer);
+        Object heightSource = StageCache.sourceKey(heightLayer);
+        roads = new SearchStage("Roads", Arrays.asList(bbox, roadSource), x -> makeRoads());
+        roadBuffer = new SearchStage("Road buffer", Collections.singletonList(parameters.getDistanceToRoad()),
+                x -> makeRoadBuffer(x.get(0)), roads);
+        if (widerForests != null) {
+            forestIntersection = new SearchStage("Forest intersection",
+                    Arrays.asList(parameters.getMinAreaSize(), parameters.getDistanceToRoad()),
+                    x -> makeNarrowedForestInters(x.get(0), x.get(1)), widerForests, roads);
+        } else if (mode == Mode.TILED) {
+            // Same forests, but the road buffer of the whole bbox is never built
+            forestIntersection = new SearchStage("Forest intersection",
+                    Arrays.asList(bbox, areaSource, parameters.getMinAreaSize(), parameters.getDistanceToRoad()),
+                    x -> makeTiledForestInters(x.get(0)), roads);
+        } else if (mode == Mode.RASTER) {
+            // No buffer at all, another distance is only another threshold of the same field
+            forestIntersection = new SearchStage("Forest intersection",
+                    Arrays.asList(bbox, areaSource, roadSource, parameters.getMinAreaSize(),
+                            parameters.getDistanceToRoad(), mode, DISTANCE_CELL_SIZE),
+                    x -> makeRasterForestInters());
+        } else {
+            forestIntersection = new SearchStage("Forest intersection",
+                    Arrays.asList(bbox, areaSource, parameters.getMinAreaSize()),
+                    x -> makeForestInters(x.get(0)), roadBuffer);
+        }
+        filteredByRivers = new SearchStage("Forests with river",
+                Arrays.asList(hidroSource, parameters.getMinRiverWidth()),
+                x -> makeFilterRiver(x.get(0)), forestIntersection);
+        filteredByHeight = new SearchStage("Forests with height diff",
+                Arrays.asList(heightSource, parameters.getHeightDiff()),
+                x -> makeFilterHeight(x.get(0)), filteredByRivers);
+        peaks = new SearchStage("Peaks",
+                Arrays.asList(bbox, heightSource),
+                x -> makePeaks());
+        forestsPeaks = new SearchStage("Forests with peaks", Collections.emptyList(),
+                x -> makeForestPeaks(x.get(0), x.get(1)), filteredByHeight, peaks);
+    }
+
+    // In the order they were shown on the map before, the raster mode has no road buffer
+    public List<SearchStage> getStages() {
+        if (mode == Mode.RASTER) {
+            return Arrays.asList(forestIntersection, filteredByRivers, filteredByHeight, peaks, forestsPeaks);
+        }
+        return Arrays.asList(roadBuffer, forestIntersection, filteredByRivers, filteredByHeight, peaks, forestsPeaks);
+    }
+
+    public SearchStage getResult() {
+        return forestsPeaks;
+    }
+
+    public SearchParameters getParameters() {
+        return parameters;
+    }
+
+    // Same bbox and layers, stages that do not depend on the changed parameters are shared through StageCache
+    public ParkSearch withParameters(SearchParameters parameters) {
+        return new ParkSearch(roadLayer, hidroLayer, areaLayer, heightLayer, bboxPoly, parameters, mode);
+    }
+
+    // Same search with a smaller distance to road, its forests are cut from the forests of this one. The raster
+    // mode thresholds its distance field again instead.
+    public ParkSearch withDistanceToRoad(double distanceToRoad) {
+        SearchParameters narrowed = new SearchParameters(parameters.getMinAreaSize(), distanceToRoad,
+                parameters.getMinRiverWidth(), parameters.getHeightDiff());
+        if (mode == Mode.RASTER || distanceToRoad >= parameters.getDistanceToRoad()) {
+            return withParameters(narrowed);
+        }
+        return new ParkSearch(roadLayer, hidroLayer, areaLayer, heightLayer, bboxPoly, narrowed, mode, forestIntersection);
+    }
+
+    // Width of the widest river wider than minRiverWidth crossing each forest, NaN if there is none
+    public double[] getWidestRivers(List<Geometry> forests, double minRiverWidth) throws IOException {
+        double[] result = new double[forests.size()];
+        if (forests.isEmpty()) {
+            return result;
+        }
+        ZonalRange widths = ZonalRange.of(forests, loadRivers(minRiverWidth, extent(forests)), "PLOTIS");
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = widths.getMax(i);
+        }
+        return result;
+    }
+
+    // Rivers wider than minRiverWidth that reach into the extent, not the whole hydrography layer
+    private IndexedLayer loadRivers(double minRiverWidth, Envelope extent) throws IOException {
+        String geomName = hidroLayer.getSimpleFeatureSource().getSchema().getGeometryDescriptor().getLocalName();
+        return new IndexedLayer(hidroLayer.getSimpleFeatureSource().getFeatures(ff.and(
+                ff.intersects(ff.property(geomName), ff.literal(gf.toGeometry(extent))),
+                ff.greater(ff.property("PLOTIS"), ff.literal(minRiverWidth)))));
+    }
+
+    private static Envelope extent(List<Geometry> geometries) {
+        Envelope result = new Envelope();
+        for (Geometry geometry : geometries) {
+            result.expandToInclude(geometry.getEnvelopeInternal());
+        }
+        return result;
+    }
+
+    private SimpleFeatureCollection makeForestPeaks(SimpleFeatureCollection filteredByHeight, SimpleFeatureCollection peaks) throws SchemaException, IOException {
+        SimpleFeatureType forestType = DataUtilities.createType("forestHeight", "edge:MultiPolygon,HeightDiff:Double,PeaksQty:Integer");
+        ListFeatureCollection forestCollection = new ListFeatureCollection(forestType);
+
+        // Peaks are indexed once, every forest then only tests the peaks within its envelope
+        IndexedLayer peakIndex = new IndexedLayer(peaks);
+
+        List<SimpleFeature> forests = new ArrayList<>();
+        filteredByHeight.accepts(forest -> forests.add((SimpleFeature) forest), null);
+
+        int[] counts = forests.parallelStream()
+                .mapToInt(sf -> peakIndex.countIntersecting((Geometry) sf.getDefaultGeometry()))
+                .toArray();
+
+        // Most peaks first, forests with as many peaks keep their order
+        Integer[] order = new Integer[forests.size()];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(counts[b], counts[a]));
+
+        for (int i : order) {
+            SimpleFeature sf = forests.get(i);
+            SimpleFeatureBuilder sfb = new SimpleFeatureBuilder(forestType);
+            sfb.set("edge", sf.getDefaultGeometry());
+            sfb.set("HeightDiff", sf.getAttribute("HeightDiff"));
+            sfb.set("PeaksQty", counts[i]);
+            forestCollection.add(sfb.buildFeature(sf.getID()));
+        }
+        return forestCollection;
+    }
+
+    private SimpleFeatureCollection makeFilterHeight(SimpleFeatureCollection filteredByRivers) throws SchemaException, IOException {
+        SimpleFeatureType forestType = DataUtilities.createType("forestHeight", "edge:MultiPolygon,HeightDiff:double");
+        ListFeatureCollection forestCollection = new ListFeatureCollection(forestType);
+
+        List<SimpleFeature> forests = new ArrayList<>();
+        List<Geometry> geometries = new ArrayList<>();
+        filteredByRivers.accepts(forest -> {
+            SimpleFeature sf = (SimpleFeature) forest;
+            forests.add(sf);
+            geometries.add((Geometry) sf.getDefaultGeometry());
+        }, null);
+
+        // Height range of every forest in one pass over the indexed height layer
+        double[] differences = ZonalRange.of(geometries, IndexedLayer.of(heightLayer), "Aukstis").getDifferences();
+
+        for (int i = 0; i < forests.size(); ++i) {
+            if (differences[i] > parameters.getHeightDiff()) {
+                SimpleFeatureBuilder sfb = new SimpleFeatureBuilder(forestType);
+                sfb.set("edge", geometries.get(i));
+                sfb.set("HeightDiff", differences[i]);
+                forestCollection.add(sfb.buildFeature(forests.get(i).getID()));
+            }
+        }
+        return forestCollection;
+    }
+
+    private SimpleFeatureCollection makeFilterRiver(SimpleFeatureCollection forestIntersection) throws SchemaException, IOException {
+        SimpleFeatureType forestType = DataUtilities.createType("forest", "edge:MultiPolygon");
+        ListFeatureCollection forestCollection = new ListFeatureCollection(forestType);
+
+        List<SimpleFeature> forests = new ArrayList<>();
+        List<Geometry> geometries = new ArrayList<>();
+        forestIntersection.accepts(forest -> {
+            forests.add((SimpleFeature) forest);
+            geometries.add((Geometry) ((SimpleFeature) forest).getDefaultGeometry());
+        }, null);
+        if (forests.isEmpty()) {
+            return forestCollection;
+        }
+
+        // Only the wide rivers around the forests are loaded, once, every forest then just needs one of them
+        IndexedLayer rivers = loadRivers(parameters.getMinRiverWidth(), extent(geometries));
+
+        forests.parallelStream()
+                .filter(sf -> rivers.anyIntersecting((Geometry) sf.getDefaultGeometry()))
+                .map(sf -> {
+                    SimpleFeatureBuilder sfb = new SimpleFeatureBuilder(forestType);
+                    sfb.init(sf);
+                    return sfb.buildFeature(sf.getID());
+                })
+                .collect(Collectors.toList())
+                .forEach(forestCollection::add);
+        return forestCollection;
+    }
+
+    private SimpleFeatureCollection makePeaks() throws SchemaException, IOException {
+        SimpleFeatureType peaksType = DataUtilities.createType("peaks", "edge:MultiPolygon");
+        ListFeatureCollection peaksCollection = new ListFeatureCollection(peaksType);
+
+        // A height polygon is a peak when none of the polygons touching it is higher
+        IndexedLayer heights = IndexedLayer.of(heightLayer);
+        AdjacencyGraph adjacency = AdjacencyGraph.of(heightLayer);
+        double[] values = new double[heights.size()];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = (Double) heights.getFeatures().get(i).getFeature().getAttribute("Aukstis");
+        }
+        BitSet peaks = adjacency.getLocalMaxima(values);
+
+        PreparedGeometry bbox = PreparedGeometryFactory.prepare(bboxPoly);
+        for (int i = peaks.nextSetBit(0); i >= 0; i = peaks.nextSetBit(i + 1)) {
+            IndexedFeature height = heights.getFeatures().get(i);
+            if (bboxPoly.getEnvelopeInternal().intersects(height.getEnvelope()) && bbox.intersects(height.getGeometry())) {
+                SimpleFeatureBuilder sfb = new SimpleFeatureBuilder(peaksType);
+                sfb.add(height.getGeometry());
+                peaksCollection.add(sfb.buildFeature(height.getFeature().getID()));
+            }
+        }
+        return peaksCollection;
+    }
+
+    private Filter forestFilter() {
+        String geomName = areaLayer.getSimpleFeatureSource().getSchema().getGeometryDescriptor().getLocalName();
+        return ff.and(
+                ff.intersects(ff.property(geomName), ff.literal(bboxPoly)),
+                ff.equals(ff.property("GKODAS"), ff.literal("ms0"))
+        );
+    }
+
+    private SimpleFeatureCollection makeForestInters(SimpleFeatureCollection roadBuffered) throws SchemaException, IOException {
+        SimpleFeatureType forestType = DataUtilities.createType("forest", "edge:MultiPolygon");
+        ListFeatureCollection forestCollection = new ListFeatureCollection(forestType);
+
+        // Buffer cut into indexed tiles, every forest is only overlaid with the tiles around it
+        List<TiledGeometry> buffers = new ArrayList<>();
+        roadBuffered.accepts(buffer -> {
+            Geometry geometry = (Geometry) ((SimpleFeature) buffer).getDefaultGeometry();
+            buffers.add(new TiledGeometry(geometry, BUFFER_TILE_VERTICES));
+        }, null);
+
+        List<SimpleFeature> forests = new ArrayList<>();
+        areaLayer.getSimpleFeatureSource().getFeatures(forestFilter()).accepts(area -> forests.add((SimpleFeature) area), null);
+
+        forests.parallelStream()
+                .flatMap(sf -> {
+                    Geometry geometry = (Geometry) sf.getDefaultGeometry();
+                    List<SimpleFeature> result = new ArrayList<>();
+                    for (TiledGeometry buffer : buffers) {
+                        Geometry newForest = buffer.intersection(geometry);
+                        if (newForest != null && newForest.getArea() >= parameters.getMinAreaSize()) {
+                            SimpleFeatureBuilder sfb = new SimpleFeatureBuilder(forestType);
+                            sfb.add(newForest);
+                            result.add(sfb.buildFeature(sf.getID()));
+                        }
+                    }
+                    return result.stream();
+                })
+                .collect(Collectors.toList())
+                .forEach(forestCollection::add);
+        return forestCollection;
+    }
+
+    // The extent the buffer can reach (bbox + distance) is cut into tiles that are searched in parallel. A tile
+    // buffers only the roads within distance of it and keeps the part of the buffer inside the tile, so the pieces
+    // of a forest from neighbouring tiles put together give exactly its intersection with the whole buffer.
+    private SimpleFeatureCollection makeTiledForestInters(SimpleFeatureCollection clippedRoads) throws SchemaException, IOException {
+        SimpleFeatureType forestType = DataUtilities.createType("forest", "edge:MultiPolygon");
+        ListFeatureCollection forestCollection = new ListFeatureCollection(forestType);
+
+        double margin = parameters.getDistanceToRoad();
+        Envelope extent = new Envelope(bboxPoly.getEnvelopeInternal());
+        extent.expandBy(margin);
+        int columns = Math.max(1, (int) Math.ceil(extent.getWidth() / TILE_SIZE));
+        int rows = Math.max(1, (int) Math.ceil(extent.getHeight() / TILE_SIZE));
+        List<RegionCell> tiles = RegionGrid.fixed(gf.toGeometry(extent), columns, rows);
+
+        IndexedLayer roads = new IndexedLayer(clippedRoads);
+        IndexedLayer forests = new IndexedLayer(areaLayer.getSimpleFeatureSource().getFeatures(forestFilter()));
+
+        Map<IndexedFeature, List<Geometry>> pieces = tiles.parallelStream()
+                .flatMap(tile -> forestPieces(tile, roads, forests, margin).entrySet().stream())
+                .collect(Collectors.groupingBy(Map.Entry::getKey, IdentityHashMap::new,
+                        Collectors.mapping(Map.Entry::getValue, Collectors.toList())));
+        Utilities.debug("Searched " + tiles.size() + " tiles, " + pieces.size() + " forests near roads");
+
+        // A forest cut by tile borders is put back together, once
+        forests.getFeatures().parallelStream()
+                .filter(pieces::containsKey)
+                .map(forest -> {
+                    List<Geometry> forestPieces = pieces.get(forest);
+                    Geometry newForest = forestPieces.size() == 1 ? forestPieces.get(0) : UnaryUnionOp.union(forestPieces);
+                    if (newForest.getArea() < parameters.getMinAreaSize()) {
+                        return null;
+                    }
+                    SimpleFeatureBuilder sfb = new SimpleFeatureBuilder(forestType);
+                    sfb.add(newForest);
+                    return sfb.buildFeature(forest.getFeature().getID());
+                })
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList())
+                .forEach(forestCollection::add);
+        return forestCollection;
+    }
+
+    // Field of the roads clipped to the bbox like the vector search, over the bbox and MAX_DISTANCE around it
+    private SimpleFeatureCollection makeRasterForestInters() throws SchemaException, IOException {
+        SimpleFeatureType forestType = DataUtilities.createType("forest", "edge:MultiPolygon");
+        ListFeatureCollection forestCollection = new ListFeatureCollection(forestType);
+
+        double distance = parameters.getDistanceToRoad();
+        if (distance > DistanceField.MAX_DISTANCE) {
+            throw new IllegalArgumentException("Distance to road over " + DistanceField.MAX_DISTANCE +
+                    " m, search without the distance raster or raise gis.search.distance.max");
+        }
+        DistanceField field = DistanceField.of(roadLayer, bboxPoly, DISTANCE_CELL_SIZE, ResultCache.getDirectory("distance"));
+
+        List<SimpleFeature> forests = new ArrayList<>();
+        areaLayer.getSimpleFeatureSource().getFeatures(forestFilter()).accepts(area -> forests.add((SimpleFeature) area), null);
+
+        forests.parallelStream()
+                .map(sf -> {
+                    Geometry newForest = field.within((Geometry) sf.getDefaultGeometry(), distance);
+                    if (newForest == null || newForest.getArea() < parameters.getMinAreaSize()) {
+                        return null;
+                    }
+                    SimpleFeatureBuilder sfb = new SimpleFeatureBuilder(forestType);
+                    sfb.add(newForest);
+                    return sfb.buildFeature(sf.getID());
+                })
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList())
+                .forEach(forestCollection::add);
+        return forestCollection;
+    }
+
+    private Map<IndexedFeature, Geometry> forestPieces(RegionCell tile, IndexedLayer roads, IndexedLayer forests, double margin) {
+        Map<IndexedFeature, Geometry> result = new IdentityHashMap<>();
+        Envelope window = new Envelope(tile.getEnvelope());
+        window.expandBy(margin);
+        List<Geometry> buffers = new ArrayList<>();
+        for (IndexedFeature road : roads.query(window)) {
+            buffers.add(road.getGeometry().buffer(margin));
+        }
+        if (buffers.isEmpty()) {
+            return result;
+        }
+
+        Geometry buffer = OverlapUnion.tiledUnion(buffers, gf).intersection(tile.getGeometry());
+        if (buffer.isEmpty()) {
+            return result;
+        }
+        TiledGeometry tiledBuffer = new TiledGeometry(buffer, BUFFER_TILE_VERTICES);
+        for (IndexedFeature forest : forests.query(tile.getEnvelope())) {
+            Geometry piece = tiledBuffer.intersection(forest.getGeometry());
+            if (piece != null && piece.getArea() > 0) {
+                result.put(forest, piece);
+            }
+        }
+        return result;
+    }
+
+    // A forest within the smaller distance of a road lies within the larger one as well, so only the forests found
+    // for the larger distance are cut again, each by the buffers of the roads around it. The buffer of a road is
+    // made once even if it reaches several forests.
+    private SimpleFeatureCollection makeNarrowedForestInters(SimpleFeatureCollection widerForests,
+                                                             SimpleFeatureCollection clippedRoads) throws SchemaException, IOException {
+        SimpleFeatureType forestType = DataUtilities.createType("forest", "edge:MultiPolygon");
+        ListFeatureCollection forestCollection = new ListFeatureCollection(forestType);
+
+        double distance = parameters.getDistanceToRoad();
+        IndexedLayer roads = new IndexedLayer(clippedRoads);
+        Map<IndexedFeature, Geometry> roadBuffers = new ConcurrentHashMap<>();
+
+        List<SimpleFeature> forests = new ArrayList<>();
+        widerForests.accepts(forest -> forests.add((SimpleFeature) forest), null);
+
+        forests.parallelStream()
+                .map(sf -> {
+                    Geometry wider = (Geometry) sf.getDefaultGeometry();
+                    Envelope window = new Envelope(wider.getEnvelopeInternal());
+                    window.expandBy(distance);
+                    List<Geometry> buffers = new ArrayList<>();
+                    for (IndexedFeature road : roads.query(window)) {
+                        buffers.add(roadBuffers.computeIfAbsent(road, x -> x.getGeometry().buffer(distance)));
+                    }
+                    if (buffers.isEmpty()) {
+                        return null;
+                    }
+                    Geometry newForest = OverlapUnion.tiledUnion(buffers, gf).intersection(wider);
+                    if (newForest.isEmpty() || newForest.getArea() < parameters.getMinAreaSize()) {
+                        return null;
+                    }
+                    SimpleFeatureBuilder sfb = new SimpleFeatureBuilder(forestType);
+                    sfb.add(newForest);
+                    return sfb.buildFeature(sf.getID());
+                })
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList())
+                .forEach(forestCollection::add);
+        return forestCollection;
+    }
+
+    // Roads clipped to the bbox, shared by the buffers of every distance
+    private SimpleFeatureCollection makeRoads() throws SchemaException, IOException {
+        String geomName = roadLayer.getSimpleFeatureSource().getSchema().getGeometryDescriptor().getLocalName();
+        Filter filter = ff.intersects(ff.property(geomName), ff.literal(bboxPoly));
+
+        SimpleFeatureType roadType = DataUtilities.createType("road", "edge:Geometry");
+        ListFeatureCollection roadCollection = new ListFeatureCollection(roadType);
+        List<SimpleFeature> roads = new ArrayList<>();
+
+        roadLayer.getSimpleFeatureSource().getFeatures(filter).accepts(road -> roads.add((SimpleFeature) road), null);
+
+        Envelope bboxEnvelope = bboxPoly.getEnvelopeInternal();
+        roads.parallelStream()
+                .map(sf -> {
+                    Geometry geometry = (Geometry) sf.getDefaultGeometry();
+                    SimpleFeatureBuilder sfb = new SimpleFeatureBuilder(roadType);
+                    sfb.add(bboxEnvelope.contains(geometry.getEnvelopeInternal()) ? geometry : geometry.intersection(bboxPoly));
+                    return sfb.buildFeature(sf.getID());
+                })
+                .collect(Collectors.toList())
+                .forEach(roadCollection::add);
+        return roadCollection;
+    }
+
+    private SimpleFeatureCollection makeRoadBuffer(SimpleFeatureCollection clippedRoads) throws SchemaException, IOException {
+        SimpleFeatureType roadBufferType = DataUtilities.createType("road_buffer", "edge:MultiPolygon");
+        ListFeatureCollection roadBufferCollection = new ListFeatureCollection(roadBufferType);
+        List<Geometry> roads = new ArrayList<>();
+
+        clippedRoads.accepts(road -> roads.add((Geometry) ((SimpleFeature) road).getDefaultGeometry()), null);
+
+        List<Geometry> buffers = roads.parallelStream()
+                .map(geometry -> geometry.buffer(parameters.getDistanceToRoad()))
+                .collect(Collectors.toList());
+
+        SimpleFeatureBuilder sfb = new SimpleFeatureBuilder(roadBufferType);
+        sfb.add(OverlapUnion.tiledUnion(buffers, gf));
+        roadBufferCollection.add(sfb.buildFeature("RB"));
+        return roadBufferCollection;
+    }
+}
@@ -0,0 +1,23 @@
+package gis.rytis.actions.search;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Pool shared by all park searches. The stages run here, and so do the parallel streams inside them,
+ * so a search does not compete with the rest of the application for the common pool.
+ */
+public class SearchExecutor {
+    // -Dgis.search.threads=N limits how many cores the search may use
+    public static final int THREADS = Integer.getInteger("gis.search.threads", Runtime.getRuntime().availableProcessors());
+
+    private static final ForkJoinPool pool = new ForkJoinPool(THREADS, pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("gis-search-" + thread.getPoolIndex());
+        return thread;
+    }, null, false);
+
+    public static ForkJoinPool getPool() {
+        return pool;
+    }
+}
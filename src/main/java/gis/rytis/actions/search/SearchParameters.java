@@ -0,0 +1,54 @@
+package gis.rytis.actions.search;
+
+import java.util.Objects;
+
+public class SearchParameters {
+    private final double minAreaSize;
+    private final double distanceToRoad;
+    private final double minRiverWidth;
+    private final double heightDiff;
+
+    public SearchParameters(double minAreaSize, double distanceToRoad, double minRiverWidth, double heightDiff) {
+        this.minAreaSize = minAreaSize;
+        this.distanceToRoad = distanceToRoad;
+        this.minRiverWidth = minRiverWidth;
+        this.heightDiff = heightDiff;
+    }
+
+    public double getMinAreaSize() {
+        return minAreaSize;
+    }
+
+    public double getDistanceToRoad() {
+        return distanceToRoad;
+    }
+
+    public double getMinRiverWidth() {
+        return minRiverWidth;
+    }
+
+    public double getHeightDiff() {
+        return heightDiff;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SearchParameters)) {
+            return false;
+        }
+        SearchParameters that = (SearchParameters) o;
+        return minAreaSize == that.minAreaSize && distanceToRoad == that.distanceToRoad &&
+                minRiverWidth == that.minRiverWidth && heightDiff == that.heightDiff;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(minAreaSize, distanceToRoad, minRiverWidth, heightDiff);
+    }
+
+    @Override
+    public String toString() {
+        return "area " + minAreaSize + " m^2, road " + distanceToRoad + " m, river " + minRiverWidth +
+                " m, height " + heightDiff + " m";
+    }
+}
@@ -0,0 +1,77 @@
+package gis.rytis.actions.search;
+
+import gis.rytis.Utilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+/**
+ * One step of the park search. A stage runs only when something downstream (or the user) asks for its
+ * features, at most once, on the SearchExecutor pool as soon as all of its inputs are ready, so independent
+ * branches of the search run side by side. A stage waits for the whole collections of its inputs.
+ */
+public class SearchStage {
+
+    public interface Body {
+        SimpleFeatureCollection apply(List<SimpleFeatureCollection> inputs) throws Exception;
+    }
+
+    private final String title;
+    private final List<SearchStage> inputs;
+    private final Body body;
+    private final List<Object> key = new ArrayList<>();
+
+    private CompletableFuture<SimpleFeatureCollection> features;
+
+    // dependencies - everything besides the inputs the features depend on: bbox, layers, parameters
+    public SearchStage(String title, List<Object> dependencies, Body body, SearchStage... inputs) {
+        this.title = title;
+        this.body = body;
+        this.inputs = Arrays.asList(inputs);
+        key.add(title);
+        key.addAll(dependencies);
+        for (SearchStage input : inputs) {
+            key.add(input.key);
+        }
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public List<SearchStage> getInputs() {
+        return inputs;
+    }
+
+    // Taken from StageCache when an earlier search computed the same stage
+    public synchronized CompletableFuture<SimpleFeatureCollection> getFeatures() {
+        if (features == null) {
+            features = StageCache.get(key, this::start);
+        }
+        return features;
+    }
+
+    private CompletableFuture<SimpleFeatureCollection> start() {
+        CompletableFuture<?>[] upstream = inputs.stream().map(SearchStage::getFeatures).toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(upstream).thenApplyAsync(x -> {
+            List<SimpleFeatureCollection> collections = inputs.stream()
+                    .map(input -> input.getFeatures().join())
+                    .collect(Collectors.toList());
+            Utilities.debug("Starting " + title);
+            long start = System.currentTimeMillis();
+            try {
+                SimpleFeatureCollection result = body.apply(collections);
+                Utilities.debug("Finished " + title + ": " + result.size() + " features in " +
+                        (System.currentTimeMillis() - start) + " ms");
+                return result;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, SearchExecutor.getPool());
+    }
+}
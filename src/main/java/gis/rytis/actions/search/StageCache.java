@@ -0,0 +1,87 @@
+package gis.rytis.actions.search;
+
+import gis.rytis.SelectableLayer;
+import gis.rytis.Utilities;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.simple.SimpleFeatureCollection;
+
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Features of the most recently used search stages, shared by all searches. A stage is found by its key
+ * (title, bbox, layers, the parameters it reads and the keys of its inputs), so a re-run with one parameter
+ * changed only recomputes the stages below it. The features are softly referenced and let go when memory
+ * runs low; a running stage is held by the searches that wait for it.
+ */
+public class StageCache {
+    public static final int SIZE = Integer.getInteger("gis.search.cache", 32);
+
+    private static final Map<List<Object>, SoftReference<CompletableFuture<SimpleFeatureCollection>>> stages =
+            new LinkedHashMap<List<Object>, SoftReference<CompletableFuture<SimpleFeatureCollection>>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, SoftReference<CompletableFuture<SimpleFeatureCollection>>> eldest) {
+                    return size() > SIZE;
+                }
+            };
+
+    // Layers that are not read from a file, numbered in the order they are first seen
+    private static final Map<FeatureSource, Long> sourceIds = new WeakHashMap<>();
+    private static long nextSourceId = 0;
+
+    // Features cached under the key, or the ones started by calculation; failed calculations are forgotten
+    public static CompletableFuture<SimpleFeatureCollection> get(List<Object> key, Supplier<CompletableFuture<SimpleFeatureCollection>> calculation) {
+        CompletableFuture<SimpleFeatureCollection> features;
+        synchronized (stages) {
+            SoftReference<CompletableFuture<SimpleFeatureCollection>> cached = stages.get(key);
+            features = cached != null ? cached.get() : null;
+            if (features != null && !features.isCompletedExceptionally()) {
+                return features;
+            }
+            features = new CompletableFuture<>();
+            stages.put(key, new SoftReference<>(features));
+        }
+
+        // Started outside the lock, the calculation asks the cache for its own inputs
+        CompletableFuture<SimpleFeatureCollection> placeholder = features;
+        try {
+            calculation.get().whenComplete((result, error) -> {
+                if (error != null) {
+                    remove(key, placeholder);
+                    placeholder.completeExceptionally(error);
+                } else {
+                    placeholder.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            remove(key, placeholder);
+            placeholder.completeExceptionally(e);
+        }
+        return placeholder;
+    }
+
+    // Part of a stage key instead of the layer itself, which the cache would otherwise keep loaded. A shapefile
+    // is known by its fingerprint, so its stages are also recomputed when the file changes.
+    public static Object sourceKey(SelectableLayer layer) {
+        if (layer.getSourceFile() != null) {
+            return Utilities.getFingerprint(layer.getSourceFile());
+        }
+        synchronized (sourceIds) {
+            return "source " + sourceIds.computeIfAbsent(layer.getFeatureSource(), x -> nextSourceId++);
+        }
+    }
+
+    private static void remove(List<Object> key, CompletableFuture<SimpleFeatureCollection> features) {
+        synchronized (stages) {
+            SoftReference<CompletableFuture<SimpleFeatureCollection>> cached = stages.get(key);
+            if (cached != null && cached.get() == features) {
+                stages.remove(key);
+            }
+        }
+    }
+}
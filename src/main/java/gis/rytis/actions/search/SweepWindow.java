@@ -0,0 +1,85 @@
+package gis.rytis.actions.search;
+
+import javax.swing.*;
+import javax.swing.border.BevelBorder;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.List;
+
+/**
+ * All rows of a parameter sweep in one table: the parameters of a combination and a forest found with them.
+ */
+public class SweepWindow extends JFrame {
+    private static final String[] COLUMN_NAMES = {"Distance to road (m)", "Min area (m^2)", "Min river width (m)",
+            "Height difference (m)", "Forest", "Area (m^2)", "Widest river (m)", "Height diff (m)", "Peaks"};
+
+    private final DefaultTableModel model;
+    private final JProgressBar progressBar;
+    private final JLabel statusText;
+    private final long startTime = System.currentTimeMillis();
+    private final int distanceCount;
+    private int finishedDistances;
+
+    public SweepWindow(ParameterSweep sweep) {
+        super("Park search sweep");
+        distanceCount = sweep.getDistanceCount();
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        getContentPane().setLayout(new BorderLayout());
+
+        model = new DefaultTableModel(COLUMN_NAMES, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+
+            @Override
+            public Class<?> getColumnClass(int column) {
+                return column == 4 ? String.class : Number.class;
+            }
+        };
+        final JTable table = new JTable(model);
+        table.setPreferredScrollableViewportSize(new Dimension(800, 300));
+        table.setFillsViewportHeight(true);
+        table.setAutoCreateRowSorter(true);
+        getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JPanel statusBar = new JPanel();
+        statusBar.setBorder(new BevelBorder(BevelBorder.LOWERED));
+        statusBar.setLayout(new BoxLayout(statusBar, BoxLayout.X_AXIS));
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setStringPainted(true);
+        progressBar.setString(sweep.getCombinationCount() + " combinations");
+        statusBar.add(progressBar);
+        statusText = new JLabel(" ");
+        statusBar.add(statusText);
+        getContentPane().add(statusBar, BorderLayout.SOUTH);
+
+        pack();
+    }
+
+    // Rows of one distance to road
+    public void onRows(List<ParameterSweep.Row> rows) {
+        for (ParameterSweep.Row row : rows) {
+            SearchParameters parameters = row.getParameters();
+            model.addRow(new Object[]{parameters.getDistanceToRoad(), parameters.getMinAreaSize(),
+                    parameters.getMinRiverWidth(), parameters.getHeightDiff(), row.getForestID(), row.getArea(),
+                    row.getRiverWidth(), row.getHeightDiff(), row.getPeaks()});
+        }
+        finishedDistances++;
+        progressBar.setIndeterminate(false);
+        progressBar.setMaximum(distanceCount);
+        progressBar.setValue(finishedDistances);
+        progressBar.setString(finishedDistances + " / " + distanceCount + " distances");
+    }
+
+    public void onFinished() {
+        progressBar.setIndeterminate(false);
+        statusText.setText(" " + model.getRowCount() + " rows in " + (System.currentTimeMillis() - startTime) / 1000 + " s");
+    }
+
+    public void onFailed(Throwable e) {
+        progressBar.setIndeterminate(false);
+        statusText.setText(" Error: " + e);
+    }
+}
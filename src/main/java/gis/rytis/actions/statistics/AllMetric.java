@@ -0,0 +1,133 @@
+package gis.rytis.actions.statistics;
+
+import gis.rytis.spatial.CellBudget;
+import gis.rytis.spatial.IndexedLayer;
+import gis.rytis.spatial.RegionCell;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Roads, areas and buildings statistics in one pass: every region is split into cells and clipped once,
+ * the same cells are then used by all three metrics.
+ */
+public class AllMetric implements RegionMetric<AllMetric.CalculationResult, AllMetric.CalculationResult> {
+
+    public static final String TOOL_NAME = "All";
+    public static final String TOOL_TIP = "Roads, areas and buildings statistics in one pass";
+    private static final int GRID_WIDTH = 10;
+    private static final int GRID_HEIGHT = 10;
+    private static final CellBudget CELL_BUDGET = CellBudget.vertices(50000);
+
+    private final RoadMetric roads = new RoadMetric();
+    private final AreaMetric areas = new AreaMetric();
+    private final BuildingMetric buildings = new BuildingMetric();
+
+    @Override
+    public String getName() {
+        return "all";
+    }
+
+    @Override
+    public String getToolName() {
+        return TOOL_NAME;
+    }
+
+    @Override
+    public String getToolTip() {
+        return TOOL_TIP;
+    }
+
+    @Override
+    public List<Input> getInputs() {
+        return Arrays.asList(RoadMetric.ROADS, AreaMetric.AREAS, BuildingMetric.BUILDINGS);
+    }
+
+    @Override
+    public int getGridWidth() {
+        return GRID_WIDTH;
+    }
+
+    @Override
+    public int getGridHeight() {
+        return GRID_HEIGHT;
+    }
+
+    @Override
+    public CellBudget getCellBudget() {
+        return CELL_BUDGET;
+    }
+
+    @Override
+    public CalculationResult createAccumulator() {
+        return new CalculationResult(roads.createAccumulator(), areas.createAccumulator(), buildings.createAccumulator());
+    }
+
+    @Override
+    public void accumulate(CalculationResult accumulator, RegionCell cell, RegionInputs inputs) {
+        IndexedLayer roadIndex = inputs.getIndex(0);
+        IndexedLayer areaIndex = inputs.getIndex(1);
+        IndexedLayer buildingIndex = inputs.getIndex(2);
+        roads.accumulate(accumulator.roads, cell, roadIndex);
+        areas.accumulate(accumulator.areas, cell, areaIndex);
+        buildings.accumulate(accumulator.buildings, cell, buildingIndex, areaIndex);
+    }
+
+    @Override
+    public void merge(CalculationResult accumulator, CalculationResult other) {
+        roads.merge(accumulator.roads, other.roads);
+        areas.merge(accumulator.areas, other.areas);
+        buildings.merge(accumulator.buildings, other.buildings);
+    }
+
+    @Override
+    public CalculationResult finish(String regionName, double regionArea, CalculationResult accumulator) {
+        return new CalculationResult(
+                roads.finish(regionName, regionArea, accumulator.roads),
+                areas.finish(regionName, regionArea, accumulator.areas),
+                buildings.finish(regionName, regionArea, accumulator.buildings));
+    }
+
+    @Override
+    public List<ResultTable<CalculationResult>> getTables() {
+        return Arrays.asList(
+                roads.getTables().get(0).map(CalculationResult::getRoads),
+                areas.getTables().get(0).map(CalculationResult::getAreas),
+                buildings.getTables().get(0).map(CalculationResult::getBuildings));
+    }
+
+    @Override
+    public void print(CalculationResult result) {
+        roads.print(result.getRoads());
+        areas.print(result.getAreas());
+        buildings.print(result.getBuildings());
+    }
+
+    public static class CalculationResult implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final RoadMetric.CalculationResult roads;
+        private final AreaMetric.CalculationResult areas;
+        private final BuildingMetric.CalculationResult buildings;
+
+        public CalculationResult(RoadMetric.CalculationResult roads, AreaMetric.CalculationResult areas,
+                                 BuildingMetric.CalculationResult buildings) {
+            this.roads = roads;
+            this.areas = areas;
+            this.buildings = buildings;
+        }
+
+        public RoadMetric.CalculationResult getRoads() {
+            return roads;
+        }
+
+        public AreaMetric.CalculationResult getAreas() {
+            return areas;
+        }
+
+        public BuildingMetric.CalculationResult getBuildings() {
+            return buildings;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package gis.rytis.actions.statistics;
+
+import com.vividsolutions.jts.geom.Geometry;
+import gis.rytis.Utilities;
+import gis.rytis.spatial.CellBudget;
+import gis.rytis.spatial.IndexedFeature;
+import gis.rytis.spatial.IndexedLayer;
+import gis.rytis.spatial.RegionCell;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+public class AreaMetric implements RegionMetric<AreaMetric.CalculationResult, AreaMetric.CalculationResult> {
+
+    public static final String TOOL_NAME = "Areas";
+    public static final String TOOL_TIP = "Areas statistics";
+    private static final int GRID_WIDTH = 4;
+    private static final int GRID_HEIGHT = 4;
+    private static final CellBudget CELL_BUDGET = CellBudget.vertices(50000);
+    public static final String[] COLUMN_NAMES = {"Region Name", "Region Area (m^2)", "Hydro Area (m^2)", "Hydro Percentage",
+            "Forest Area (m^2)", "Forest Percentage",
+            "Built Area (m^2)", "Built Percentage",
+            "Garden Area (m^2)", "Garden Percentage"};
+    public static final String[] COLUMN_FORMATS = {null, "%f", "%f", "%.3f %%", "%f", "%.3f %%", "%f", "%.3f %%",
+            "%f", "%.3f %%"};
+
+    public static final Input AREAS = new Input("PLO_P", "Area layer", Utilities.LayerType.POLYGON);
+
+    @Override
+    public String getName() {
+        return "areas";
+    }
+
+    @Override
+    public String getToolName() {
+        return TOOL_NAME;
+    }
+
+    @Override
+    public String getToolTip() {
+        return TOOL_TIP;
+    }
+
+    @Override
+    public List<Input> getInputs() {
+        return Collections.singletonList(AREAS);
+    }
+
+    @Override
+    public int getGridWidth() {
+        return GRID_WIDTH;
+    }
+
+    @Override
+    public int getGridHeight() {
+        return GRID_HEIGHT;
+    }
+
+    @Override
+    public CellBudget getCellBudget() {
+        return CELL_BUDGET;
+    }
+
+    @Override
+    public CalculationResult createAccumulator() {
+        return new CalculationResult(null, 0, 0, 0, 0, 0);
+    }
+
+    @Override
+    public void accumulate(CalculationResult accumulator, RegionCell cell, RegionInputs inputs) {
+        accumulate(accumulator, cell, inputs.getIndex(0));
+    }
+
+    public void accumulate(CalculationResult accumulator, RegionCell cell, IndexedLayer areaIndex) {
+        Geometry squareGeometry = cell.getGeometry();
+        Geometry squareRegion = cell.getClip();
+
+        for (IndexedFeature area : areaIndex.intersecting(squareGeometry)) {
+            Geometry intersected = squareRegion.intersection(area.getGeometry());
+            double intersectedArea = intersected.getArea();
+            switch (Utilities.getAreaType(area.getFeature())) {
+                case GARDEN:
+                    accumulator.gardenArea += intersectedArea;
+                    break;
+                case HYDRO:
+                    accumulator.hydroArea += intersectedArea;
+                    break;
+                case BUILDING:
+                    accumulator.buildingArea += intersectedArea;
+                    break;
+                case FOREST:
+                    accumulator.forestArea += intersectedArea;
+                    break;
+                default:
+                    System.out.println("UNKNOWN type area");
+            }
+        }
+    }
+
+    @Override
+    public void merge(CalculationResult accumulator, CalculationResult other) {
+        accumulator.hydroArea += other.hydroArea;
+        accumulator.forestArea += other.forestArea;
+        accumulator.buildingArea += other.buildingArea;
+        accumulator.gardenArea += other.gardenArea;
+    }
+
+    @Override
+    public CalculationResult finish(String regionName, double regionArea, CalculationResult accumulator) {
+        accumulator.setRegionName(regionName);
+        accumulator.setRegionArea(regionArea);
+        return accumulator;
+    }
+
+    @Override
+    public List<ResultTable<CalculationResult>> getTables() {
+        return Collections.singletonList(new ResultTable<>(getName(), "Area statistics", COLUMN_NAMES,
+                COLUMN_FORMATS, AreaMetric::toRow));
+    }
+
+    @Override
+    public void print(CalculationResult result) {
+        System.out.println("-- " + result.getRegionName() + " (" + result.getRegionArea() + " m^2): ");
+        System.out.println("Hidrografijos teritorija: " + result.getHydroArea() + " m^2 (" +
+                            result.getHydroPercentage() + " %)");
+        System.out.println("Medžiai ir krūmai: " + result.getForestArea() + " m^2 (" +
+                            result.getForestPercentage() + " %)");
+        System.out.println("Ūžstatyta teritorija: " + result.getBuildingArea() + " m^2 (" +
+                            result.getBuildingPercentage() + " %)");
+        System.out.println("Pramoniniai sodai: " + result.getGardenArea() + " m^2 (" +
+                            result.getGardenPercentage() + " %)");
+    }
+
+    public static class CalculationResult implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private String regionName;
+        private double regionArea;
+        private double hydroArea;
+        private double forestArea;
+        private double buildingArea;
+        private double gardenArea;
+
+        public CalculationResult(String regionName, double regionArea, double hydroArea, double forestArea, double buildingArea, double gardenArea) {
+            this.regionName = regionName;
+            this.regionArea = regionArea;
+            this.hydroArea = hydroArea;
+            this.forestArea = forestArea;
+            this.buildingArea = buildingArea;
+            this.gardenArea = gardenArea;
+        }
+
+        public String getRegionName() {
+            return regionName;
+        }
+
+        public void setRegionName(String regionName) {
+            this.regionName = regionName;
+        }
+
+        public double getRegionArea() {
+            return regionArea;
+        }
+
+        public void setRegionArea(double regionArea) {
+            this.regionArea = regionArea;
+        }
+
+        public double getHydroArea() {
+            return hydroArea;
+        }
+
+        public void setHydroArea(double hydroArea) {
+            this.hydroArea = hydroArea;
+        }
+
+        public double getForestArea() {
+            return forestArea;
+        }
+
+        public void setForestArea(double forestArea) {
+            this.forestArea = forestArea;
+        }
+
+        public double getBuildingArea() {
+            return buildingArea;
+        }
+
+        public void setBuildingArea(double buildingArea) {
+            this.buildingArea = buildingArea;
+        }
+
+        public double getGardenArea() {
+            return gardenArea;
+        }
+
+        public void setGardenArea(double gardenArea) {
+            this.gardenArea = gardenArea;
+        }
+
+        public double getHydroPercentage() {
+            return hydroArea/regionArea*100;
+        }
+
+        public double getForestPercentage() {
+            return forestArea/regionArea*100;
+        }
+
+        public double getBuildingPercentage() {
+            return buildingArea/regionArea*100;
+        }
+
+        public double getGardenPercentage() {
+            return gardenArea/regionArea*100;
+        }
+    }
+
+    static Object[] toRow(CalculationResult result) {
+        return new Object[] {
+                result.getRegionName(),
+                result.getRegionArea(),
+                result.getHydroArea(),
+                result.getHydroPercentage(),
+                result.getForestArea(),
+                result.getForestPercentage(),
+                result.getBuildingArea(),
+                result.getBuildingPercentage(),
+                result.getGardenArea(),
+                result.getGardenPercentage()
+        };
+    }
+}
@@ -0,0 +1,151 @@
+package gis.rytis.actions.statistics;
+
+import gis.rytis.Utilities;
+import gis.rytis.spatial.CellBudget;
+import gis.rytis.spatial.LandClassRaster;
+import gis.rytis.spatial.RegionCell;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Areas statistics counted on a raster of PLO_P instead of intersecting the polygons. Every area is exact up to
+ * the error bound: the pixels on the region border or on a PLO_P outline, times the pixel area.
+ */
+public class AreaRasterMetric implements RegionMetric<LandClassRaster.Counts, AreaRasterMetric.CalculationResult> {
+
+    public static final String TOOL_NAME = "Areas ~";
+    public static final String TOOL_TIP = "Approximate areas statistics from a raster of PLO_P";
+    // -Dgis.stats.raster.cell=<metres> sets the raster resolution
+    public static final double CELL_SIZE = Double.parseDouble(System.getProperty("gis.stats.raster.cell", "50"));
+    public static final String[] COLUMN_NAMES = columnNames();
+    private static final String[] COLUMN_FORMATS = columnFormats();
+
+    @Override
+    public String getName() {
+        return "areas-raster";
+    }
+
+    @Override
+    public String getToolName() {
+        return TOOL_NAME;
+    }
+
+    @Override
+    public String getToolTip() {
+        return TOOL_TIP;
+    }
+
+    @Override
+    public List<Input> getInputs() {
+        return Collections.singletonList(AreaMetric.AREAS);
+    }
+
+    @Override
+    public int getGridWidth() {
+        return 1;
+    }
+
+    @Override
+    public int getGridHeight() {
+        return 1;
+    }
+
+    // Counting pixels is cheap, the region is not split
+    @Override
+    public CellBudget getCellBudget() {
+        return null;
+    }
+
+    @Override
+    public String getParameters() {
+        return "cell " + CELL_SIZE;
+    }
+
+    @Override
+    public LandClassRaster.Counts createAccumulator() {
+        return new LandClassRaster.Counts();
+    }
+
+    @Override
+    public void accumulate(LandClassRaster.Counts accumulator, RegionCell cell, RegionInputs inputs) {
+        try {
+            LandClassRaster.of(inputs.getLayer(0), CELL_SIZE, ResultCache.getDirectory("raster"))
+                    .count(cell.getClip(), accumulator);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void merge(LandClassRaster.Counts accumulator, LandClassRaster.Counts other) {
+        accumulator.add(other);
+    }
+
+    @Override
+    public CalculationResult finish(String regionName, double regionArea, LandClassRaster.Counts accumulator) {
+        double pixelArea = CELL_SIZE * CELL_SIZE;
+        AreaMetric.CalculationResult areas = new AreaMetric.CalculationResult(regionName, regionArea,
+                accumulator.get(Utilities.AreaType.HYDRO) * pixelArea,
+                accumulator.get(Utilities.AreaType.FOREST) * pixelArea,
+                accumulator.get(Utilities.AreaType.BUILDING) * pixelArea,
+                accumulator.get(Utilities.AreaType.GARDEN) * pixelArea);
+        return new CalculationResult(areas, accumulator.getMixed() * pixelArea);
+    }
+
+    @Override
+    public List<ResultTable<CalculationResult>> getTables() {
+        return Collections.singletonList(new ResultTable<>(getName(), "Area statistics (raster " + CELL_SIZE + " m)",
+                COLUMN_NAMES, COLUMN_FORMATS, AreaRasterMetric::toRow));
+    }
+
+    @Override
+    public void print(CalculationResult result) {
+        new AreaMetric().print(result.getAreas());
+        System.out.println("Paklaida: ±" + result.getErrorBound() + " m^2");
+    }
+
+    public static class CalculationResult implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final AreaMetric.CalculationResult areas;
+        private final double errorBound;
+
+        public CalculationResult(AreaMetric.CalculationResult areas, double errorBound) {
+            this.areas = areas;
+            this.errorBound = errorBound;
+        }
+
+        public AreaMetric.CalculationResult getAreas() {
+            return areas;
+        }
+
+        // Every area may be off by at most this much
+        public double getErrorBound() {
+            return errorBound;
+        }
+    }
+
+    private static String[] columnNames() {
+        String[] result = Arrays.copyOf(AreaMetric.COLUMN_NAMES, AreaMetric.COLUMN_NAMES.length + 1);
+        result[result.length - 1] = "Error bound (m^2)";
+        return result;
+    }
+
+    private static String[] columnFormats() {
+        String[] result = Arrays.copyOf(AreaMetric.COLUMN_FORMATS, AreaMetric.COLUMN_FORMATS.length + 1);
+        result[result.length - 1] = "%f";
+        return result;
+    }
+
+    private static Object[] toRow(CalculationResult result) {
+        Object[] row = AreaMetric.toRow(result.getAreas());
+        row = Arrays.copyOf(row, row.length + 1);
+        row[row.length - 1] = result.getErrorBound();
+        return row;
+    }
+}
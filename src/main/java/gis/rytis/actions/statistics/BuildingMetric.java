@@ -0,0 +1,285 @@
+package gis.rytis.actions.statistics;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import gis.rytis.Utilities;
+import gis.rytis.spatial.CellBudget;
+import gis.rytis.spatial.IndexedFeature;
+import gis.rytis.spatial.IndexedLayer;
+import gis.rytis.spatial.OverlapUnion;
+import gis.rytis.spatial.RegionCell;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BuildingMetric implements RegionMetric<BuildingMetric.CalculationResult, BuildingMetric.CalculationResult> {
+
+    public static final String TOOL_NAME = "Buildings";
+    public static final String TOOL_TIP = "Buildings statistics";
+    private static final int GRID_WIDTH = 10;
+    private static final int GRID_HEIGHT = 10;
+    private static final CellBudget CELL_BUDGET = CellBudget.features(500);
+    public static final String[] COLUMN_NAMES = {"Region Name", "Building Area (m^2)", "In Hydro (m^2)", "Hydro Percentage",
+            "In Forest (m^2)", "Forest Percentage",
+            "In Built (m^2)", "Built Percentage",
+            "In Garden (m^2)", "Garden Percentage"};
+    private static final String[] COLUMN_FORMATS = {null, "%f", "%f", "%.8f %%", "%f", "%.8f %%", "%f", "%.8f %%",
+            "%f", "%.8f %%"};
+
+    public static final Input BUILDINGS = new Input("PAS_P", "Building layer", Utilities.LayerType.POLYGON);
+
+    @Override
+    public String getName() {
+        return "buildings";
+    }
+
+    @Override
+    public String getToolName() {
+        return TOOL_NAME;
+    }
+
+    @Override
+    public String getToolTip() {
+        return TOOL_TIP;
+    }
+
+    @Override
+    public List<Input> getInputs() {
+        return Arrays.asList(BUILDINGS, AreaMetric.AREAS);
+    }
+
+    @Override
+    public int getGridWidth() {
+        return GRID_WIDTH;
+    }
+
+    @Override
+    public int getGridHeight() {
+        return GRID_HEIGHT;
+    }
+
+    @Override
+    public CellBudget getCellBudget() {
+        return CELL_BUDGET;
+    }
+
+    // The cells are sized by the buildings, areas are only looked up under them
+    @Override
+    public List<Input> getBudgetInputs() {
+        return Collections.singletonList(BUILDINGS);
+    }
+
+    @Override
+    public CalculationResult createAccumulator() {
+        return new CalculationResult(null, 0, 0, 0, 0, 0, 0);
+    }
+
+    @Override
+    public void accumulate(CalculationResult accumulator, RegionCell cell, RegionInputs inputs) {
+        accumulate(accumulator, cell, inputs.getIndex(0), inputs.getIndex(1));
+    }
+
+    public void accumulate(CalculationResult accumulator, RegionCell cell, IndexedLayer buildingIndex, IndexedLayer areaIndex) {
+        Geometry squareRegion = cell.getClip();
+        PreparedGeometry preparedRegion = cell.isInside() ? null : PreparedGeometryFactory.prepare(squareRegion);
+
+        /// Calculating buildings area
+        List<Geometry> buildings = new ArrayList<>();
+        buildingIndex.query(cell.getEnvelope(), building -> {
+            Geometry geometry = building.getGeometry();
+            if (cell.isInside() ? cell.getEnvelope().contains(geometry.getEnvelopeInternal()) : preparedRegion.covers(geometry)) {
+                buildings.add(geometry);
+                return;
+            }
+            Geometry intersected = squareRegion.intersection(geometry);
+            if (!intersected.isEmpty()) {
+                buildings.add(intersected);
+            }
+        });
+
+        // Prepared once per cell, the index does not keep prepared copies of the areas
+        Map<IndexedFeature, PreparedGeometry> preparedAreas = new HashMap<>();
+
+        // Only buildings that overlap each other are unioned, one group at a time
+        for (Geometry piece : OverlapUnion.union(buildings)) {
+            double pieceArea = piece.getArea();
+            accumulator.buildingArea += pieceArea;
+
+            /// Calculate buildings in specific area
+            for (IndexedFeature area : areaIndex.intersecting(piece)) {
+                PreparedGeometry preparedArea = preparedAreas.computeIfAbsent(area,
+                        x -> PreparedGeometryFactory.prepare(x.getGeometry()));
+                double intersectedArea = preparedArea.covers(piece)
+                        ? pieceArea
+                        : area.getGeometry().intersection(piece).getArea();
+                switch (Utilities.getAreaType(area.getFeature())) {
+                    case GARDEN:
+                        accumulator.gardenArea += intersectedArea;
+                        break;
+                    case HYDRO:
+                        accumulator.hydroArea += intersectedArea;
+                        break;
+                    case BUILDING:
+                        accumulator.builtArea += intersectedArea;
+                        break;
+                    case FOREST:
+                        accumulator.forestArea += intersectedArea;
+                        break;
+                    default:
+                        System.out.println("UNKNOWN type area");
+                }
+            }
+        }
+    }
+
+    @Override
+    public void merge(CalculationResult accumulator, CalculationResult other) {
+        accumulator.buildingArea += other.buildingArea;
+        accumulator.hydroArea += other.hydroArea;
+        accumulator.forestArea += other.forestArea;
+        accumulator.builtArea += other.builtArea;
+        accumulator.gardenArea += other.gardenArea;
+    }
+
+    @Override
+    public CalculationResult finish(String regionName, double regionArea, CalculationResult accumulator) {
+        accumulator.setRegionName(regionName);
+        accumulator.setRegionArea(regionArea);
+        return accumulator;
+    }
+
+    @Override
+    public List<ResultTable<CalculationResult>> getTables() {
+        return Collections.singletonList(new ResultTable<>(getName(), "Buildings statistics", COLUMN_NAMES,
+                COLUMN_FORMATS, BuildingMetric::toRow));
+    }
+
+    @Override
+    public void print(CalculationResult result) {
+        System.out.println("-- " + result.getRegionName() + " (" + result.getRegionArea() + " m^2): ");
+        System.out.println("Pastatų plotas: " + result.getBuildingArea() + " m^2");
+        System.out.println("Hidrografijos teritorijoje: " + result.getHydroArea() + " m^2 (" +
+                result.getHydroPercentage() + " %)");
+        System.out.println("Medžių ir krūmų teritorijoje: " + result.getForestArea() + " m^2 (" +
+                result.getForestPercentage() + " %)");
+        System.out.println("Ūžstatytoje teritorijoje: " + result.getBuiltArea() + " m^2 (" +
+                result.getBuiltPercentage() + " %)");
+        System.out.println("Pramoninių sodų teritorijoje: " + result.getGardenArea() + " m^2 (" +
+                result.getGardenPercentage() + " %)");
+    }
+
+    public static class CalculationResult implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private String regionName;
+        private double buildingArea;
+        private double regionArea;
+        private double hydroArea;
+        private double forestArea;
+        private double builtArea;
+        private double gardenArea;
+
+        public CalculationResult(String regionName, double buildingArea, double regionArea, double hydroArea, double forestArea, double builtArea, double gardenArea) {
+            this.regionName = regionName;
+            this.buildingArea = buildingArea;
+            this.regionArea = regionArea;
+            this.hydroArea = hydroArea;
+            this.forestArea = forestArea;
+            this.builtArea = builtArea;
+            this.gardenArea = gardenArea;
+        }
+
+        public String getRegionName() {
+            return regionName;
+        }
+
+        public void setRegionName(String regionName) {
+            this.regionName = regionName;
+        }
+
+        public double getBuildingArea() {
+            return buildingArea;
+        }
+
+        public void setBuildingArea(double buildingArea) {
+            this.buildingArea = buildingArea;
+        }
+
+        public double getRegionArea() {
+            return regionArea;
+        }
+
+        public void setRegionArea(double regionArea) {
+            this.regionArea = regionArea;
+        }
+
+        public double getHydroArea() {
+            return hydroArea;
+        }
+
+        public void setHydroArea(double hydroArea) {
+            this.hydroArea = hydroArea;
+        }
+
+        public double getForestArea() {
+            return forestArea;
+        }
+
+        public void setForestArea(double forestArea) {
+            this.forestArea = forestArea;
+        }
+
+        public double getBuiltArea() {
+            return builtArea;
+        }
+
+        public void setBuiltArea(double builtArea) {
+            this.builtArea = builtArea;
+        }
+
+        public double getGardenArea() {
+            return gardenArea;
+        }
+
+        public void setGardenArea(double gardenArea) {
+            this.gardenArea = gardenArea;
+        }
+
+        public double getHydroPercentage() {
+            return hydroArea/buildingArea*100;
+        }
+
+        public double getForestPercentage() {
+            return forestArea/buildingArea*100;
+        }
+
+        public double getBuiltPercentage() {
+            return builtArea/buildingArea*100;
+        }
+
+        public double getGardenPercentage() {
+            return gardenArea/buildingArea*100;
+        }
+    }
+
+    private static Object[] toRow(CalculationResult result) {
+        return new Object[] {
+                result.getRegionName(),
+                result.getBuildingArea(),
+                result.getHydroArea(),
+                result.getHydroPercentage(),
+                result.getForestArea(),
+                result.getForestPercentage(),
+                result.getBuiltArea(),
+                result.getBuiltPercentage(),
+                result.getGardenArea(),
+                result.getGardenPercentage()
+        };
+    }
+}
@@ -0,0 +1,85 @@
+package gis.rytis.actions.statistics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
+
+/**
+ * Streams statistics results to CSV as soon as each region is finished.
+ */
+public class CsvResultWriter<R> implements StatisticsRun.Listener<R> {
+    private final Writer writer;
+    private final Function<R, Object[]> rowMapper;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final long startTime = System.currentTimeMillis();
+    private int rows = 0;
+    private volatile boolean failed = false;
+
+    public CsvResultWriter(Writer writer, String[] header, Function<R, Object[]> rowMapper) throws IOException {
+        this.writer = writer;
+        this.rowMapper = rowMapper;
+        writeRow(header);
+    }
+
+    @Override
+    public void onStarted(int regionCount) {
+        System.out.println("Calculating " + regionCount + " regions on " + StatisticsExecutor.THREADS + " threads");
+    }
+
+    @Override
+    public synchronized void onResult(R result) {
+        try {
+            writeRow(rowMapper.apply(result));
+            writer.flush();
+            rows++;
+        } catch (IOException e) {
+            System.out.println("Error: " + e);
+            onFailed(e);
+        }
+    }
+
+    // The run prints the error, once for all the tables
+    @Override
+    public void onFailed(Exception e) {
+        failed = true;
+    }
+
+    @Override
+    public void onFinished(boolean cancelled) {
+        double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+        synchronized (this) {
+            System.out.println(String.format("Wrote %d regions in %.1f s (%.2f regions/s)", rows, seconds, rows / seconds));
+        }
+        done.countDown();
+    }
+
+    // Returns false if any region failed
+    public boolean await() throws InterruptedException {
+        done.await();
+        return !failed;
+    }
+
+    private void writeRow(Object[] values) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < values.length; ++i) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append(escape(values[i]));
+        }
+        line.append('\n');
+        writer.write(line.toString());
+    }
+
+    private static String escape(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.contains(",") || text.contains("\"") || text.contains("\n")) {
+            return "\"" + text.replace("\"", "\"\"") + "\"";
+        }
+        return text;
+    }
+}
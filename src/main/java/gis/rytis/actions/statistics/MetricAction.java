@@ -0,0 +1,61 @@
+package gis.rytis.actions.statistics;
+
+import gis.rytis.SelectableLayer;
+import org.geotools.map.Layer;
+import org.geotools.swing.MapPane;
+import org.geotools.swing.action.MapAction;
+import org.opengis.feature.simple.SimpleFeature;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Toolbar button that calculates a RegionMetric for the SAV_P regions on the map.
+ */
+public class MetricAction<A, R extends Serializable> extends MapAction {
+    public static final String ICON_IMAGE = null;
+
+    private final RegionMetric<A, R> metric;
+
+    public MetricAction(MapPane mapPane, RegionMetric<A, R> metric) {
+        this.metric = metric;
+        super.init(mapPane, metric.getToolName(), metric.getToolTip(), ICON_IMAGE);
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        List<Layer> mapLayers = getMapPane().getMapContent().layers();
+        SelectableLayer regionLayer;
+        List<SelectableLayer> inputs;
+        try {
+            regionLayer = RegionAggregator.requireLayer(mapLayers, RegionMetric.REGIONS);
+            inputs = RegionAggregator.requireInputs(metric, mapLayers);
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(null, ex.getMessage());
+            return;
+        }
+
+        StatisticsRun<R> run = new StatisticsRun<>();
+        List<StatisticsRun.Listener<R>> windows = new ArrayList<>();
+        for (ResultTable<R> table : metric.getTables()) {
+            StatisticsWindow<R> window = new StatisticsWindow<>(table.getTitle(), table.getColumnNames(),
+                    table.getColumnFormats(), table::toRow, run);
+            window.setVisible(true);
+            windows.add(window);
+        }
+
+        StatisticsRun.Preparation<R> preparation = RegionAggregator.prepare(metric, inputs, run);
+        run.start(regionLayer, () -> {
+            Function<SimpleFeature, R> calculation = preparation.prepare();
+            return region -> {
+                R result = calculation.apply(region);
+                metric.print(result);
+                return result;
+            };
+        }, StatisticsRun.combined(windows));
+    }
+}
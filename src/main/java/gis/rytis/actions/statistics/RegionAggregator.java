@@ -0,0 +1,115 @@
+package gis.rytis.actions.statistics;
+
+import com.vividsolutions.jts.geom.Geometry;
+import gis.rytis.SelectableLayer;
+import gis.rytis.Utilities;
+import gis.rytis.spatial.IndexedLayer;
+import gis.rytis.spatial.RegionCell;
+import gis.rytis.spatial.RegionGrid;
+import org.geotools.map.Layer;
+import org.opengis.feature.simple.SimpleFeature;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a RegionMetric: finds its layers, indexes them, splits every region into cells and caches the results.
+ */
+public class RegionAggregator {
+
+    public static SelectableLayer requireLayer(Collection<? extends Layer> layers, RegionMetric.Input input) {
+        Optional<SelectableLayer> layer = Utilities.findLayerByName(layers, input.getLayerName());
+        if (!layer.isPresent()) {
+            throw new IllegalArgumentException(input.getDescription() + " (" + input.getLayerName() + ") not found");
+        }
+        if (Utilities.getLayerType(layer.get()) != input.getType()) {
+            throw new IllegalArgumentException(input.getDescription() + " (" + input.getLayerName() +
+                    ") geometry is not " + describe(input.getType()));
+        }
+        return layer.get();
+    }
+
+    public static List<SelectableLayer> requireInputs(RegionMetric<?, ?> metric, Collection<? extends Layer> layers) {
+        List<SelectableLayer> result = new ArrayList<>();
+        for (RegionMetric.Input input : metric.getInputs()) {
+            result.add(requireLayer(layers, input));
+        }
+        return result;
+    }
+
+    public static <A, R extends Serializable> StatisticsRun.Preparation<R> prepare(RegionMetric<A, R> metric,
+                                                                                  List<SelectableLayer> inputs,
+                                                                                  StatisticsRun<?> run) {
+        return () -> {
+            // A metric without cells does not index its inputs (the raster one), so the cache does not either
+            ResultCache<R> cache = new ResultCache<>(metric.getName(), describe(metric), metric.getCellBudget() != null,
+                    inputs.toArray(new SelectableLayer[inputs.size()]));
+            RegionInputs regionInputs = new RegionInputs(inputs);
+            return region -> cache.get(region, () -> calculate(metric, region, regionInputs, run));
+        };
+    }
+
+    public static <A, R extends Serializable> R calculate(RegionMetric<A, R> metric, SimpleFeature region,
+                                                          RegionInputs inputs, StatisticsRun<?> run) {
+        String regionName = (String) region.getAttribute("SAV");
+        System.out.println("Starting " + regionName);
+
+        Geometry regionGeometry = (Geometry) region.getDefaultGeometry();
+
+        List<RegionCell> cells = metric.getCellBudget() == null
+                ? Collections.singletonList(RegionGrid.whole(regionGeometry))
+                : RegionGrid.create(regionGeometry, metric.getGridWidth(), metric.getGridHeight(),
+                        metric.getCellBudget(), budgetIndexes(metric, inputs));
+
+        A accumulator = metric.createAccumulator();
+        cells.parallelStream()
+                .map(cell -> {
+                    run.checkCancelled();
+                    A cellAccumulator = metric.createAccumulator();
+                    metric.accumulate(cellAccumulator, cell, inputs);
+                    return cellAccumulator;
+                })
+                .collect(Collectors.toList())
+                .forEach(x -> metric.merge(accumulator, x));
+
+        System.out.println("Finished " + regionName);
+        return metric.finish(regionName, regionGeometry.getArea(), accumulator);
+    }
+
+    private static IndexedLayer[] budgetIndexes(RegionMetric<?, ?> metric, RegionInputs inputs) {
+        List<RegionMetric.Input> all = metric.getInputs();
+        return metric.getBudgetInputs().stream()
+                .map(input -> inputs.getIndex(all.indexOf(input)))
+                .toArray(IndexedLayer[]::new);
+    }
+
+    // Part of the cache key, results calculated with other parameters are not reused
+    private static String describe(RegionMetric<?, ?> metric) {
+        if (metric.getCellBudget() == null) {
+            return "whole " + metric.getParameters();
+        }
+        String budgetLayers = metric.getBudgetInputs().stream()
+                .map(RegionMetric.Input::getLayerName)
+                .collect(Collectors.joining(","));
+        return RegionGrid.describe(metric.getGridWidth(), metric.getGridHeight(), metric.getCellBudget()) +
+                " of " + budgetLayers + " " + metric.getParameters();
+    }
+
+    private static String describe(Utilities.LayerType type) {
+        switch (type) {
+            case POLYGON:
+                return "polygons";
+            case LINE:
+                return "lines";
+            case DOT:
+                return "points";
+            default:
+                return type.name().toLowerCase();
+        }
+    }
+}
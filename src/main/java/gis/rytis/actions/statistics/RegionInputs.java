@@ -0,0 +1,36 @@
+package gis.rytis.actions.statistics;
+
+import gis.rytis.SelectableLayer;
+import gis.rytis.spatial.IndexedLayer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Input layers of a metric in the order of RegionMetric.getInputs(). Layers are indexed on first use,
+ * so metrics that read the data some other way do not pay for the STRtree.
+ */
+public class RegionInputs {
+    private final List<SelectableLayer> layers;
+
+    public RegionInputs(List<SelectableLayer> layers) {
+        this.layers = layers;
+    }
+
+    public int size() {
+        return layers.size();
+    }
+
+    public SelectableLayer getLayer(int i) {
+        return layers.get(i);
+    }
+
+    public IndexedLayer getIndex(int i) {
+        try {
+            return IndexedLayer.of(layers.get(i));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
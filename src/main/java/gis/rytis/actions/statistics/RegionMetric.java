@@ -0,0 +1,84 @@
+package gis.rytis.actions.statistics;
+
+import gis.rytis.Utilities;
+import gis.rytis.spatial.CellBudget;
+import gis.rytis.spatial.RegionCell;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Statistic calculated for every SAV_P region. RegionAggregator splits the region into cells, gives every cell
+ * its own accumulator (in parallel), merges them in cell order and finishes the result of the region.
+ * Indexing, caching, progress and output come from the framework, a metric only describes one cell.
+ *
+ * @param <A> per cell partial result
+ * @param <R> result of a region, also stored in the result cache
+ */
+public interface RegionMetric<A, R extends Serializable> {
+
+    class Input {
+        private final String layerName;
+        private final String description;
+        private final Utilities.LayerType type;
+
+        public Input(String layerName, String description, Utilities.LayerType type) {
+            this.layerName = layerName;
+            this.description = description;
+            this.type = type;
+        }
+
+        public String getLayerName() {
+            return layerName;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public Utilities.LayerType getType() {
+            return type;
+        }
+    }
+
+    Input REGIONS = new Input("SAV_P", "Region layer", Utilities.LayerType.POLYGON);
+
+    // Used for the cache directory and as the StatisticsBatch argument
+    String getName();
+
+    String getToolName();
+
+    String getToolTip();
+
+    // Layers in the order they are passed to accumulate()
+    List<Input> getInputs();
+
+    int getGridWidth();
+
+    int getGridHeight();
+
+    // null keeps the whole region in one cell, the inputs are then not indexed unless accumulate() asks for it
+    CellBudget getCellBudget();
+
+    // Layers counted against the cell budget, the others are only looked up under the cells
+    default List<Input> getBudgetInputs() {
+        return getInputs();
+    }
+
+    // Anything else the results depend on, part of the cache key
+    default String getParameters() {
+        return "";
+    }
+
+    A createAccumulator();
+
+    void accumulate(A accumulator, RegionCell cell, RegionInputs inputs);
+
+    void merge(A accumulator, A other);
+
+    R finish(String regionName, double regionArea, A accumulator);
+
+    List<ResultTable<R>> getTables();
+
+    void print(R result);
+}
@@ -0,0 +1,167 @@
+package gis.rytis.actions.statistics;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import gis.rytis.SelectableLayer;
+import gis.rytis.Utilities;
+import gis.rytis.spatial.IndexedFeature;
+import gis.rytis.spatial.IndexedLayer;
+import org.opengis.feature.simple.SimpleFeature;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Region results kept on disk between runs, one file per region and statistic.
+ * A result is reused without loading the inputs when the region and the input shapefiles (size and
+ * modification time) did not change. When a shapefile did change, only the input features around the
+ * region are compared, so regions away from the edited features are still not recalculated. Metrics that do not
+ * read the input features one by one (e.g. from a raster of the layer) skip that comparison, their results are
+ * kept only as long as the shapefiles and the parameters (e.g. the cell size) stay the same.
+ */
+public class ResultCache<R extends Serializable> {
+    // -Dgis.stats.cache=<directory>, -Dgis.stats.cache=off disables the cache
+    private static final String DIRECTORY = System.getProperty("gis.stats.cache",
+            new File(System.getProperty("user.home"), ".gis-stats-cache").getPath());
+    // Part of every file name, raise it when a metric calculates its results differently so old files are not reused
+    private static final int FORMAT_VERSION = 2;
+
+    public interface Calculation<R> {
+        R calculate() throws IOException;
+    }
+
+    private static class Entry<R> implements Serializable {
+        private static final long serialVersionUID = 2L;
+
+        // The file name has only a hash of the parameters
+        private final String parameters;
+        private final String files;
+        private final long region;
+        private final long inputs;
+        private final R result;
+
+        private Entry(String parameters, String files, long region, long inputs, R result) {
+            this.parameters = parameters;
+            this.files = files;
+            this.region = region;
+            this.inputs = inputs;
+            this.result = result;
+        }
+    }
+
+    private final File directory;
+    private final String parameters;
+    private final boolean compareFeatures;
+    private final List<SelectableLayer> inputs;
+    private final String files;
+
+    public ResultCache(String statistic, String parameters, boolean compareFeatures, SelectableLayer... inputs) {
+        this(getDirectory(statistic), parameters, compareFeatures, inputs);
+    }
+
+    ResultCache(File directory, String parameters, boolean compareFeatures, SelectableLayer... inputs) {
+        this.directory = directory;
+        this.parameters = parameters;
+        this.compareFeatures = compareFeatures;
+        this.inputs = Arrays.asList(inputs);
+        this.files = fingerprint(this.inputs);
+    }
+
+    public R get(SimpleFeature region, Calculation<R> calculation) {
+        try {
+            if (directory == null) {
+                return calculation.calculate();
+            }
+
+            File file = new File(directory, region.getID().replaceAll("[^\\w.-]", "_") + "-v" + FORMAT_VERSION + "-" +
+                    Integer.toHexString(parameters.hashCode()) + ".ser");
+            Geometry regionGeometry = (Geometry) region.getDefaultGeometry();
+            long regionChecksum = new IndexedFeature(region, regionGeometry).getChecksum();
+
+            Entry<R> entry = read(file);
+            if (entry != null && !parameters.equals(entry.parameters)) {
+                entry = null;
+            }
+            if (entry != null && entry.region == regionChecksum && files != null && files.equals(entry.files)) {
+                Utilities.debug("Cached " + region.getID());
+                return entry.result;
+            }
+
+            // Comparing the features would index the inputs, which the metric itself may never do
+            long inputsChecksum = compareFeatures ? inputsChecksum(regionGeometry.getEnvelopeInternal()) : 0;
+            if (compareFeatures && entry != null && entry.region == regionChecksum && entry.inputs == inputsChecksum) {
+                Utilities.debug("Cached " + region.getID() + " (inputs around it did not change)");
+                write(file, new Entry<>(parameters, files, regionChecksum, inputsChecksum, entry.result));
+                return entry.result;
+            }
+
+            R result = calculation.calculate();
+            write(file, new Entry<>(parameters, files, regionChecksum, inputsChecksum, result));
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Every input feature the region could have touched
+    private long inputsChecksum(Envelope envelope) throws IOException {
+        long result = 17;
+        for (SelectableLayer input : inputs) {
+            long sum = 0;
+            List<IndexedFeature> candidates = IndexedLayer.of(input).query(envelope);
+            for (IndexedFeature candidate : candidates) {
+                sum += candidate.getChecksum();
+            }
+            result = result * 31 + sum;
+            result = result * 31 + candidates.size();
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Entry<R> read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (Entry<R>) in.readObject();
+        } catch (IOException|ClassNotFoundException|ClassCastException e) {
+            // Written by an older version or broken, calculated again
+            System.out.println("Could not read cached result " + file + ": " + e);
+            return null;
+        }
+    }
+
+    private void write(File file, Entry<R> entry) {
+        try {
+            Files.createDirectories(directory.toPath());
+            File temp = File.createTempFile(file.getName(), ".tmp", directory);
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeObject(entry);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Could not cache result " + file + ": " + e);
+        }
+    }
+
+    // Fingerprints of the input shapefiles, null if an input is not a file
+    private static String fingerprint(List<SelectableLayer> inputs) {
+        StringBuilder result = new StringBuilder();
+        for (SelectableLayer input : inputs) {
+            if (input.getSourceFile() == null) {
+                return null;
+            }
+            result.append(Utilities.getFingerprint(input.getSourceFile()));
+        }
+        return result.toString();
+    }
+
+    // Cache directory for other data derived from the inputs, null when caching is off
+    public static File getDirectory(String name) {
+        return "off".equals(DIRECTORY) ? null : new File(DIRECTORY, name);
+    }
+}
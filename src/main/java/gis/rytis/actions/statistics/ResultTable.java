@@ -0,0 +1,49 @@
+package gis.rytis.actions.statistics;
+
+import java.util.function.Function;
+
+/**
+ * One table of a metric: a StatisticsWindow in the application or a CSV file in StatisticsBatch.
+ */
+public class ResultTable<R> {
+    private final String name;
+    private final String title;
+    private final String[] columnNames;
+    // String.format() pattern of every column shown in the window, null for text columns
+    private final String[] columnFormats;
+    private final Function<R, Object[]> rowMapper;
+
+    public ResultTable(String name, String title, String[] columnNames, String[] columnFormats,
+                       Function<R, Object[]> rowMapper) {
+        this.name = name;
+        this.title = title;
+        this.columnNames = columnNames;
+        this.columnFormats = columnFormats;
+        this.rowMapper = rowMapper;
+    }
+
+    // Same table filled from a part of a bigger result
+    public <T> ResultTable<T> map(Function<T, R> part) {
+        return new ResultTable<>(name, title, columnNames, columnFormats, rowMapper.compose(part));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    public String[] getColumnFormats() {
+        return columnFormats;
+    }
+
+    public Object[] toRow(R result) {
+        return rowMapper.apply(result);
+    }
+}
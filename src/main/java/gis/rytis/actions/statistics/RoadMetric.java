@@ -0,0 +1,150 @@
+package gis.rytis.actions.statistics;
+
+import gis.rytis.Utilities;
+import gis.rytis.spatial.CellBudget;
+import gis.rytis.spatial.IndexedLayer;
+import gis.rytis.spatial.LineClipper;
+import gis.rytis.spatial.RegionCell;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+public class RoadMetric implements RegionMetric<RoadMetric.CalculationResult, RoadMetric.CalculationResult> {
+
+    public static final String TOOL_NAME = "Roads";
+    public static final String TOOL_TIP = "Roads statistics";
+    private static final int GRID_WIDTH = 4;
+    private static final int GRID_HEIGHT = 4;
+    private static final CellBudget CELL_BUDGET = CellBudget.vertices(20000);
+    public static final String[] COLUMN_NAMES = {"Region Name", "Region Area (m^2)", "Roads length (m)", "Roads density (m/km^2)"};
+    private static final String[] COLUMN_FORMATS = {null, "%f", "%f", "%f"};
+
+    public static final Input ROADS = new Input("KEL_L", "Roads layer", Utilities.LayerType.LINE);
+
+    @Override
+    public String getName() {
+        return "roads";
+    }
+
+    @Override
+    public String getToolName() {
+        return TOOL_NAME;
+    }
+
+    @Override
+    public String getToolTip() {
+        return TOOL_TIP;
+    }
+
+    @Override
+    public List<Input> getInputs() {
+        return Collections.singletonList(ROADS);
+    }
+
+    @Override
+    public int getGridWidth() {
+        return GRID_WIDTH;
+    }
+
+    @Override
+    public int getGridHeight() {
+        return GRID_HEIGHT;
+    }
+
+    @Override
+    public CellBudget getCellBudget() {
+        return CELL_BUDGET;
+    }
+
+    @Override
+    public CalculationResult createAccumulator() {
+        return new CalculationResult(null, 0, 0);
+    }
+
+    @Override
+    public void accumulate(CalculationResult accumulator, RegionCell cell, RegionInputs inputs) {
+        accumulate(accumulator, cell, inputs.getIndex(0));
+    }
+
+    public void accumulate(CalculationResult accumulator, RegionCell cell, IndexedLayer roadIndex) {
+        LineClipper clipper = new LineClipper(cell);
+        roadIndex.query(cell.getEnvelope(), road -> accumulator.roadsLength += clipper.length(road.getGeometry()));
+    }
+
+    @Override
+    public void merge(CalculationResult accumulator, CalculationResult other) {
+        accumulator.roadsLength += other.roadsLength;
+    }
+
+    @Override
+    public CalculationResult finish(String regionName, double regionArea, CalculationResult accumulator) {
+        accumulator.setRegionName(regionName);
+        accumulator.setRegionArea(regionArea);
+        return accumulator;
+    }
+
+    @Override
+    public List<ResultTable<CalculationResult>> getTables() {
+        return Collections.singletonList(new ResultTable<>(getName(), "Road statistics", COLUMN_NAMES,
+                COLUMN_FORMATS, RoadMetric::toRow));
+    }
+
+    @Override
+    public void print(CalculationResult result) {
+        System.out.println(result.getRegionName() + " -> Plotas: " + result.getRegionArea() +
+                " m^2; Kelių ilgis: " + result.getRoadsLength() +
+                " m; Kelių tankis: " + (result.getRoadsDensity() * 1000000) + "m/km^2");
+    }
+
+    public static class CalculationResult implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private String regionName;
+        private double regionArea;
+        private double roadsLength;
+
+        public CalculationResult(String regionName, double regionArea, double roadsLength) {
+            this.regionName = regionName;
+            this.regionArea = regionArea;
+            this.roadsLength = roadsLength;
+        }
+
+        public double getRoadsDensity() {
+            return roadsLength/regionArea;
+        }
+
+        public String getRegionName() {
+            return regionName;
+        }
+
+        public void setRegionName(String regionName) {
+            this.regionName = regionName;
+        }
+
+        public double getRegionArea() {
+            return regionArea;
+        }
+
+        public void setRegionArea(double regionArea) {
+            this.regionArea = regionArea;
+        }
+
+        public double getRoadsLength() {
+            return roadsLength;
+        }
+
+        public void setRoadsLength(double roadsLength) {
+            this.roadsLength = roadsLength;
+        }
+    }
+
+    private static Object[] toRow(CalculationResult result) {
+        return new Object[] {
+                result.getRegionName(),
+                result.getRegionArea(),
+                result.getRoadsLength(),
+                result.getRoadsDensity() * 1000000
+        };
+    }
+}
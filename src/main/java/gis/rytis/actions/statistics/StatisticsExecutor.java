@@ -0,0 +1,23 @@
+package gis.rytis.actions.statistics;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Pool shared by all statistics runs. Regions are submitted as separate tasks and the cells of a region
+ * are processed with parallel streams, which run inside this pool instead of the common one.
+ */
+public class StatisticsExecutor {
+    // -Dgis.stats.threads=N limits how many cores the statistics may use
+    public static final int THREADS = Integer.getInteger("gis.stats.threads", Runtime.getRuntime().availableProcessors());
+
+    private static final ForkJoinPool pool = new ForkJoinPool(THREADS, pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("gis-stats-" + thread.getPoolIndex());
+        return thread;
+    }, null, false);
+
+    public static ForkJoinPool getPool() {
+        return pool;
+    }
+}
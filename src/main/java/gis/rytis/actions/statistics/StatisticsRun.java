@@ -0,0 +1,150 @@
+package gis.rytis.actions.statistics;
+
+import org.geotools.map.FeatureLayer;
+import org.opengis.feature.simple.SimpleFeature;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Calculation of one statistic over every region of a layer. Results are reported region by region
+ * as they finish, the calculation itself never runs on the calling thread.
+ */
+public class StatisticsRun<R> {
+
+    public interface Preparation<R> {
+        // Runs on the statistics pool, loads whatever the calculation needs
+        Function<SimpleFeature, R> prepare() throws IOException;
+    }
+
+    public interface Listener<R> {
+        void onStarted(int regionCount);
+
+        void onResult(R result);
+
+        void onFailed(Exception e);
+
+        void onFinished(boolean cancelled);
+    }
+
+    // Same events to every listener, e.g. all tables of a metric
+    public static <R> Listener<R> combined(List<? extends Listener<R>> listeners) {
+        return new Listener<R>() {
+            @Override
+            public void onStarted(int regionCount) {
+                listeners.forEach(x -> x.onStarted(regionCount));
+            }
+
+            @Override
+            public void onResult(R result) {
+                listeners.forEach(x -> x.onResult(result));
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                listeners.forEach(x -> x.onFailed(e));
+            }
+
+            @Override
+            public void onFinished(boolean cancelled) {
+                listeners.forEach(x -> x.onFinished(cancelled));
+            }
+        };
+    }
+
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    private final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    private Listener<R> listener;
+
+    public void start(FeatureLayer regionLayer, Preparation<R> preparation, Listener<R> listener) {
+        this.listener = listener;
+        ForkJoinPool pool = StatisticsExecutor.getPool();
+
+        pool.execute(() -> {
+            List<SimpleFeature> regions = new ArrayList<>();
+            Function<SimpleFeature, R> calculation;
+            try {
+                calculation = preparation.prepare();
+                regionLayer.getSimpleFeatureSource().getFeatures().accepts(x -> regions.add((SimpleFeature) x), null);
+            } catch (IOException|RuntimeException e) {
+                fail(e);
+                finish();
+                return;
+            }
+
+            listener.onStarted(regions.size());
+            if (regions.isEmpty()) {
+                finish();
+                return;
+            }
+
+            AtomicInteger remaining = new AtomicInteger(regions.size());
+            synchronized (tasks) {
+                for (SimpleFeature region : regions) {
+                    if (cancelled.get()) {
+                        break;
+                    }
+                    tasks.add(pool.submit(() -> {
+                        try {
+                            checkCancelled();
+                            R result = calculation.apply(region);
+                            checkCancelled();
+                            listener.onResult(result);
+                        } catch (CancellationException e) {
+                            // cancelled by the user, nothing to report
+                        } catch (RuntimeException e) {
+                            fail(e);
+                        } finally {
+                            if (remaining.decrementAndGet() == 0) {
+                                finish();
+                            }
+                        }
+                    }));
+                }
+            }
+        });
+    }
+
+    public void cancel() {
+        cancelled.set(true);
+        synchronized (tasks) {
+            // Tasks that have not started yet are dropped, running ones stop at the next checkCancelled()
+            tasks.forEach(x -> x.cancel(false));
+        }
+        finish();
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    // Called by the calculations between cells
+    public void checkCancelled() {
+        if (cancelled.get()) {
+            throw new CancellationException();
+        }
+    }
+
+    // Printed here once, not by every table. Regions that fail after a cancel are not reported at all.
+    private void fail(Exception e) {
+        if (finished.get()) {
+            return;
+        }
+        e.printStackTrace();
+        listener.onFailed(e);
+    }
+
+    private void finish() {
+        if (finished.compareAndSet(false, true) && listener != null) {
+            listener.onFinished(cancelled.get());
+        }
+    }
+}
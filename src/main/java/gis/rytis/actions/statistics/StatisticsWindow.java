@@ -0,0 +1,155 @@
+package gis.rytis.actions.statistics;
+
+import javax.swing.*;
+import javax.swing.border.BevelBorder;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.Collections;
+import java.util.function.Function;
+
+/**
+ * Result table that is filled row by row while the regions are being calculated.
+ */
+public class StatisticsWindow<R> extends JFrame implements StatisticsRun.Listener<R> {
+    private final Function<R, Object[]> rowMapper;
+    private final DefaultTableModel model;
+    private final JProgressBar progressBar;
+    private final JLabel statusText;
+    private final JButton cancelButton;
+    private final long startTime = System.currentTimeMillis();
+    // Only touched on the EDT
+    private int failures;
+    private boolean finished;
+
+    public StatisticsWindow(String title, String[] columnNames, String[] columnFormats, Function<R, Object[]> rowMapper,
+                            StatisticsRun<?> run) {
+        super(title);
+        this.rowMapper = rowMapper;
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        getContentPane().setLayout(new BorderLayout());
+
+        model = new DefaultTableModel(columnNames, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+
+            // Numbers are kept as Double so the columns sort by value
+            @Override
+            public Class<?> getColumnClass(int column) {
+                return columnFormats[column] != null ? Double.class : String.class;
+            }
+        };
+        final JTable table = new JTable(model);
+        for (int i = 0; i < columnFormats.length; ++i) {
+            if (columnFormats[i] != null) {
+                table.getColumnModel().getColumn(i).setCellRenderer(new NumberRenderer(columnFormats[i]));
+            }
+        }
+        table.setPreferredScrollableViewportSize(new Dimension(500, 70));
+        table.setFillsViewportHeight(true);
+        table.setAutoCreateRowSorter(true);
+        table.getRowSorter().setSortKeys(Collections.singletonList(new RowSorter.SortKey(0, SortOrder.ASCENDING)));
+        getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JPanel statusBar = new JPanel();
+        statusBar.setBorder(new BevelBorder(BevelBorder.LOWERED));
+        statusBar.setLayout(new BoxLayout(statusBar, BoxLayout.X_AXIS));
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setStringPainted(true);
+        progressBar.setString("Loading layers");
+        statusBar.add(progressBar);
+        statusText = new JLabel(" ");
+        statusBar.add(statusText);
+        cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(e -> run.cancel());
+        statusBar.add(cancelButton);
+        getContentPane().add(statusBar, BorderLayout.SOUTH);
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                run.cancel();
+            }
+        });
+
+        pack();
+    }
+
+    @Override
+    public void onStarted(int regionCount) {
+        SwingUtilities.invokeLater(() -> {
+            progressBar.setIndeterminate(false);
+            progressBar.setMaximum(regionCount);
+            progressBar.setValue(0);
+            progressBar.setString("0 / " + regionCount);
+        });
+    }
+
+    @Override
+    public void onResult(R result) {
+        Object[] row = rowMapper.apply(result);
+        SwingUtilities.invokeLater(() -> {
+            model.addRow(row);
+            advance();
+        });
+    }
+
+    // A failed region still counts as done, so the progress bar reaches the end
+    @Override
+    public void onFailed(Exception e) {
+        SwingUtilities.invokeLater(() -> {
+            // A region that was still running when the run finished
+            if (finished) {
+                return;
+            }
+            failures++;
+            statusText.setText(" Error: " + e);
+            if (!progressBar.isIndeterminate()) {
+                advance();
+            }
+        });
+    }
+
+    private void advance() {
+        progressBar.setValue(progressBar.getValue() + 1);
+        progressBar.setString(progressBar.getValue() + " / " + progressBar.getMaximum());
+    }
+
+    @Override
+    public void onFinished(boolean cancelled) {
+        long seconds = (System.currentTimeMillis() - startTime) / 1000;
+        SwingUtilities.invokeLater(() -> {
+            // Still indeterminate when the layers could not be loaded, the error stays in the status bar then
+            boolean started = !progressBar.isIndeterminate();
+            finished = true;
+            progressBar.setIndeterminate(false);
+            cancelButton.setEnabled(false);
+            if (cancelled) {
+                statusText.setText(" Cancelled after " + seconds + " s");
+            } else if (failures == 0) {
+                statusText.setText(" Finished in " + seconds + " s");
+            } else if (started) {
+                statusText.setText(" Finished in " + seconds + " s, " + failures + " of " + progressBar.getMaximum() + " regions failed");
+            }
+        });
+    }
+
+    private static class NumberRenderer extends DefaultTableCellRenderer {
+        private final String format;
+
+        NumberRenderer(String format) {
+            this.format = format;
+            setHorizontalAlignment(SwingConstants.RIGHT);
+        }
+
+        @Override
+        protected void setValue(Object value) {
+            setText(value == null ? "" : String.format(format, value));
+        }
+    }
+}
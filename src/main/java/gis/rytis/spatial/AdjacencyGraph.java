@@ -0,0 +1,158 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import gis.rytis.SelectableLayer;
+import gis.rytis.Utilities;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Which polygons of a layer touch each other (share an edge or a corner). Node i is the i-th feature of
+ * IndexedLayer.of(layer), the neighbours are kept in compressed rows. The graph is built once and saved
+ * next to the shapefile (*.adj), it is rebuilt when the shapefile changes.
+ */
+public class AdjacencyGraph {
+    private static final LayerCache<Void, AdjacencyGraph> cache = new LayerCache<>();
+    private static final int FILE_VERSION = 1;
+
+    // Neighbours of node i are neighbours[offsets[i]] .. neighbours[offsets[i + 1] - 1]
+    private final int[] offsets;
+    private final int[] neighbours;
+
+    private AdjacencyGraph(int[] offsets, int[] neighbours) {
+        this.offsets = offsets;
+        this.neighbours = neighbours;
+    }
+
+    public static AdjacencyGraph of(SelectableLayer layer) throws IOException {
+        return cache.get(layer.getSimpleFeatureSource(), () -> load(layer));
+    }
+
+    private static AdjacencyGraph load(SelectableLayer layer) throws IOException {
+        IndexedLayer index = IndexedLayer.of(layer);
+        File file = null;
+        String fingerprint = null;
+        if (layer.getSourceFile() != null) {
+            file = new File(layer.getSourceFile().getPath().replaceFirst("\\.[^.\\\\/]*$", "") + ".adj");
+            fingerprint = Utilities.getFingerprint(layer.getSourceFile());
+        }
+
+        long start = System.currentTimeMillis();
+        AdjacencyGraph graph = file != null ? read(file, fingerprint, index.size()) : null;
+        if (graph == null) {
+            graph = build(index);
+            if (file != null) {
+                write(graph, file, fingerprint);
+            }
+        }
+        Utilities.debug("Adjacency of " + layer.getTitle() + ": " + graph.size() + " polygons, " +
+                graph.neighbours.length / 2 + " borders in " + (System.currentTimeMillis() - start) + " ms");
+        return graph;
+    }
+
+    static AdjacencyGraph build(IndexedLayer index) {
+        List<IndexedFeature> features = index.getFeatures();
+        Map<IndexedFeature, Integer> nodes = new IdentityHashMap<>();
+        for (int i = 0; i < features.size(); ++i) {
+            nodes.put(features.get(i), i);
+        }
+
+        // Every node finds its own neighbours, so the rows come out symmetric without a second pass
+        int[][] rows = IntStream.range(0, features.size()).parallel().mapToObj(i -> {
+            IndexedFeature feature = features.get(i);
+            PreparedGeometry prepared = PreparedGeometryFactory.prepare(feature.getGeometry());
+            List<Integer> row = new ArrayList<>();
+            index.query(feature.getEnvelope(), candidate -> {
+                if (candidate != feature && prepared.intersects(candidate.getGeometry())
+                        && candidate.getGeometry().touches(feature.getGeometry())) {
+                    row.add(nodes.get(candidate));
+                }
+            });
+            return row.stream().mapToInt(Integer::intValue).sorted().toArray();
+        }).toArray(int[][]::new);
+
+        int[] offsets = new int[rows.length + 1];
+        for (int i = 0; i < rows.length; ++i) {
+            offsets[i + 1] = offsets[i] + rows[i].length;
+        }
+        int[] neighbours = new int[offsets[rows.length]];
+        for (int i = 0; i < rows.length; ++i) {
+            System.arraycopy(rows[i], 0, neighbours, offsets[i], rows[i].length);
+        }
+        return new AdjacencyGraph(offsets, neighbours);
+    }
+
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    public int[] getNeighbours(int node) {
+        return Arrays.copyOfRange(neighbours, offsets[node], offsets[node + 1]);
+    }
+
+    // Nodes no neighbour of which has a greater value, one pass over the edges
+    public BitSet getLocalMaxima(double[] values) {
+        BitSet result = new BitSet(size());
+        for (int i = 0; i < size(); ++i) {
+            boolean peak = true;
+            for (int k = offsets[i]; k < offsets[i + 1] && peak; ++k) {
+                peak = values[neighbours[k]] <= values[i];
+            }
+            result.set(i, peak);
+        }
+        return result;
+    }
+
+    static AdjacencyGraph read(File file, String fingerprint, int size) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_VERSION || !in.readUTF().equals(fingerprint) || in.readInt() != size) {
+                return null;
+            }
+            int[] offsets = new int[size + 1];
+            for (int i = 0; i < offsets.length; ++i) {
+                offsets[i] = in.readInt();
+            }
+            int[] neighbours = new int[offsets[size]];
+            for (int i = 0; i < neighbours.length; ++i) {
+                neighbours[i] = in.readInt();
+            }
+            return new AdjacencyGraph(offsets, neighbours);
+        } catch (IOException e) {
+            System.out.println("Could not read adjacency " + file + ": " + e);
+            return null;
+        }
+    }
+
+    static void write(AdjacencyGraph graph, File file, String fingerprint) {
+        try {
+            File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(FILE_VERSION);
+                out.writeUTF(fingerprint);
+                out.writeInt(graph.size());
+                for (int offset : graph.offsets) {
+                    out.writeInt(offset);
+                }
+                for (int neighbour : graph.neighbours) {
+                    out.writeInt(neighbour);
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Could not save adjacency " + file + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package gis.rytis.spatial;
+
+public class CellBudget {
+    public enum Measure {
+        FEATURES, VERTICES
+    }
+
+    private final Measure measure;
+    private final long limit;
+
+    private CellBudget(Measure measure, long limit) {
+        this.measure = measure;
+        this.limit = limit;
+    }
+
+    public static CellBudget features(long limit) {
+        return new CellBudget(Measure.FEATURES, limit);
+    }
+
+    public static CellBudget vertices(long limit) {
+        return new CellBudget(Measure.VERTICES, limit);
+    }
+
+    public long measure(IndexedFeature feature) {
+        return measure == Measure.FEATURES ? 1 : feature.getGeometry().getNumPoints();
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    @Override
+    public String toString() {
+        return measure + "<=" + limit;
+    }
+}
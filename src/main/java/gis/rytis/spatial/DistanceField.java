@@ -0,0 +1,541 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+import gis.rytis.SelectableLayer;
+import gis.rytis.Utilities;
+import org.geotools.factory.CommonFactoryFinder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.FilterFactory2;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Distance from every pixel centre to the nearest line of a layer (KEL_L) inside an area, in decimetres, up to
+ * MAX_DISTANCE. The field covers the area and MAX_DISTANCE around it; lines are clipped to the area like the
+ * roads of the vector search, so both count the same roads. Lines are burned into the pixels they pass through and
+ * the distances between pixel centres are exact (Felzenszwalb-Huttenlocher transform), so a distance is off by at
+ * most about one pixel. The field is built right in a memory-mapped file, 2 bytes per pixel, so it never sits on
+ * the heap, and is kept until the shapefile changes.
+ */
+public class DistanceField {
+    private static final LayerCache<List<Object>, DistanceField> cache = new LayerCache<>();
+    private static final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+    private static final int FILE_VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 5 * 8 + 2 * 4;
+    // -Dgis.search.distance.max=<metres>, below 6553.5 m; farther pixels are only known to be far
+    public static final double MAX_DISTANCE = Double.parseDouble(System.getProperty("gis.search.distance.max", "5000"));
+    private static final int FAR = 0xffff;
+
+    private final Envelope extent;
+    private final double cellSize;
+    private final int width;
+    private final int height;
+    // From the top, unsigned. A mapping holds at most 2 GB, so rows are sliced from several of them.
+    private final ShortBuffer[] rows;
+
+    private DistanceField(Envelope extent, double cellSize, int width, int height, ShortBuffer[] rows) {
+        this.extent = extent;
+        this.cellSize = cellSize;
+        this.width = width;
+        this.height = height;
+        this.rows = rows;
+    }
+
+    public static DistanceField of(SelectableLayer layer, Geometry area, double cellSize, File cacheDirectory) throws IOException {
+        return cache.get(layer.getSimpleFeatureSource(), Arrays.asList(cellSize, area.toText()),
+                () -> load(layer, area, cellSize, cacheDirectory));
+    }
+
+    private static DistanceField load(SelectableLayer layer, Geometry area, double cellSize, File cacheDirectory) throws IOException {
+        Envelope extent = new Envelope(area.getEnvelopeInternal());
+        extent.expandBy(MAX_DISTANCE + cellSize);
+
+        File file = null;
+        if (cacheDirectory != null && layer.getSourceFile() != null) {
+            String key = Utilities.getFingerprint(layer.getSourceFile()) + cellSize + MAX_DISTANCE + area.toText();
+            file = new File(cacheDirectory, layer.getSourceFile().getName() + "-" + cellSize + "-" +
+                    Integer.toHexString(key.hashCode()) + ".distance");
+            try {
+                Files.createDirectories(cacheDirectory.toPath());
+            } catch (IOException e) {
+                System.out.println("Could not cache distance field " + file + ": " + e);
+                file = null;
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        DistanceField field = file != null ? read(file, extent, cellSize) : null;
+        if (field == null) {
+            if (file == null) {
+                file = File.createTempFile("distance", ".tmp");
+                file.deleteOnExit();
+            }
+            field = build(layer, area, extent, cellSize, file);
+        }
+        Utilities.debug("Distance field of " + layer.getTitle() + ": " + field.width + "x" + field.height +
+                " pixels of " + cellSize + " m in " + (System.currentTimeMillis() - start) + " ms");
+        return field;
+    }
+
+    // The version is written last, a field left half built by a crash is never read
+    private static DistanceField build(SelectableLayer layer, Geometry area, Envelope extent, double cellSize,
+                                       File file) throws IOException {
+        checkSize(extent, cellSize);
+        int width = (int) Math.ceil(extent.getWidth() / cellSize);
+        int height = (int) Math.ceil(extent.getHeight() / cellSize);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            List<MappedByteBuffer> mappings = new ArrayList<>();
+            DistanceField field = new DistanceField(extent, cellSize, width, height,
+                    map(channel, FileChannel.MapMode.READ_WRITE, width, height, mappings));
+            field.clear();
+
+            String geomName = layer.getSimpleFeatureSource().getSchema().getGeometryDescriptor().getLocalName();
+            Envelope areaEnvelope = area.getEnvelopeInternal();
+            layer.getSimpleFeatureSource().getFeatures(ff.intersects(ff.property(geomName), ff.literal(area))).accepts(x -> {
+                Geometry geometry = (Geometry) ((SimpleFeature) x).getDefaultGeometry();
+                if (geometry != null) {
+                    field.burn(areaEnvelope.contains(geometry.getEnvelopeInternal()) ? geometry : geometry.intersection(area));
+                }
+            }, null);
+            field.transform();
+
+            mappings.forEach(MappedByteBuffer::force);
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.putInt(0);
+            header.putDouble(extent.getMinX());
+            header.putDouble(extent.getMaxX());
+            header.putDouble(extent.getMinY());
+            header.putDouble(extent.getMaxY());
+            header.putDouble(cellSize);
+            header.putInt(width);
+            header.putInt(height);
+            header.force();
+            header.putInt(0, FILE_VERSION);
+            header.force();
+            return field;
+        }
+    }
+
+    // Field of the lines over the extent, kept in memory only
+    static DistanceField build(List<? extends Geometry> lines, Envelope extent, double cellSize) {
+        checkSize(extent, cellSize);
+        int width = (int) Math.ceil(extent.getWidth() / cellSize);
+        int height = (int) Math.ceil(extent.getHeight() / cellSize);
+        ShortBuffer[] rows = new ShortBuffer[height];
+        for (int y = 0; y < height; ++y) {
+            rows[y] = ShortBuffer.allocate(width);
+        }
+        DistanceField field = new DistanceField(extent, cellSize, width, height, rows);
+        field.clear();
+        lines.forEach(field::burn);
+        field.transform();
+        return field;
+    }
+
+    private static void checkSize(Envelope extent, double cellSize) {
+        if (MAX_DISTANCE * 10 >= FAR) {
+            throw new IllegalArgumentException("Distances over " + (FAR - 1) / 10.0 + " m do not fit the field");
+        }
+        if (Math.ceil(extent.getWidth() / cellSize) > Integer.MAX_VALUE / 2 ||
+                Math.ceil(extent.getHeight() / cellSize) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Distance cell size " + cellSize + " m is too small for " + extent);
+        }
+    }
+
+    // Rows of the file after the header, in as few mappings as fit
+    private static ShortBuffer[] map(FileChannel channel, FileChannel.MapMode mode, int width, int height,
+                                     List<MappedByteBuffer> mappings) throws IOException {
+        ShortBuffer[] rows = new ShortBuffer[height];
+        int rowsPerMapping = Math.max(1, Integer.MAX_VALUE / (2 * width));
+        for (int first = 0; first < height; first += rowsPerMapping) {
+            int count = Math.min(rowsPerMapping, height - first);
+            MappedByteBuffer mapping = channel.map(mode, HEADER_SIZE + 2L * width * first, 2L * width * count);
+            if (mappings != null) {
+                mappings.add(mapping);
+            }
+            ShortBuffer shorts = mapping.asShortBuffer();
+            for (int y = 0; y < count; ++y) {
+                shorts.clear();
+                shorts.position(y * width);
+                shorts.limit((y + 1) * width);
+                rows[first + y] = shorts.slice();
+            }
+        }
+        return rows;
+    }
+
+    // Every pixel far until the lines are burned in
+    private void clear() {
+        for (ShortBuffer row : rows) {
+            for (int x = 0; x < width; ++x) {
+                row.put(x, (short) FAR);
+            }
+        }
+    }
+
+    private void transform() {
+        // Vertical distance in pixels to the nearest line pixel of the column, two sweeps over the rows
+        for (int y = 1; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                relax(rows[y], rows[y - 1], x);
+            }
+        }
+        for (int y = height - 2; y >= 0; --y) {
+            for (int x = 0; x < width; ++x) {
+                relax(rows[y], rows[y + 1], x);
+            }
+        }
+
+        // Then along every row the exact distance to the nearest of those, rows are independent
+        int limit = (int) Math.ceil(MAX_DISTANCE / cellSize);
+        IntStream.range(0, height).parallel().forEach(y -> {
+            ShortBuffer row = rows[y];
+            double[] f = new double[width];
+            for (int x = 0; x < width; ++x) {
+                int vertical = row.get(x) & FAR;
+                f[x] = vertical > limit ? Double.POSITIVE_INFINITY : (double) vertical * vertical;
+            }
+            double[] d = lowerEnvelope(f);
+            for (int x = 0; x < width; ++x) {
+                double metres = Math.sqrt(d[x]) * cellSize;
+                row.put(x, (short) (metres > MAX_DISTANCE ? FAR : (int) Math.round(metres * 10)));
+            }
+        });
+    }
+
+    private static void relax(ShortBuffer row, ShortBuffer neighbour, int x) {
+        int value = neighbour.get(x) & FAR;
+        if (value + 1 < (row.get(x) & FAR)) {
+            row.put(x, (short) (value + 1));
+        }
+    }
+
+    // Every pixel a line passes through, sampled at a quarter of a pixel
+    private void burn(Geometry geometry) {
+        for (int i = 0; i < geometry.getNumGeometries(); ++i) {
+            Geometry part = geometry.getGeometryN(i);
+            if (!(part instanceof LineString)) {
+                continue;
+            }
+            CoordinateSequence sequence = ((LineString) part).getCoordinateSequence();
+            for (int j = 0; j < sequence.size(); ++j) {
+                double ax = sequence.getX(j);
+                double ay = sequence.getY(j);
+                double bx = j + 1 < sequence.size() ? sequence.getX(j + 1) : ax;
+                double by = j + 1 < sequence.size() ? sequence.getY(j + 1) : ay;
+                int steps = (int) Math.ceil(Math.hypot(bx - ax, by - ay) / cellSize * 4) + 1;
+                for (int k = 0; k <= steps; ++k) {
+                    int column = column(ax + (bx - ax) * k / steps);
+                    int row = row(ay + (by - ay) * k / steps);
+                    if (column >= 0 && row >= 0) {
+                        rows[row].put(column, (short) 0);
+                    }
+                }
+            }
+        }
+    }
+
+    // Squared distance transform of a sampled function
+    private static double[] lowerEnvelope(double[] f) {
+        int n = f.length;
+        double[] d = new double[n];
+        int[] v = new int[n];
+        double[] z = new double[n + 1];
+        int k = -1;
+        for (int q = 0; q < n; ++q) {
+            if (f[q] == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            double s = Double.NEGATIVE_INFINITY;
+            while (k >= 0) {
+                s = ((f[q] + (double) q * q) - (f[v[k]] + (double) v[k] * v[k])) / (2.0 * q - 2.0 * v[k]);
+                if (s > z[k]) {
+                    break;
+                }
+                k--;
+            }
+            k++;
+            v[k] = q;
+            z[k] = k == 0 ? Double.NEGATIVE_INFINITY : s;
+            z[k + 1] = Double.POSITIVE_INFINITY;
+        }
+        if (k < 0) {
+            Arrays.fill(d, Double.POSITIVE_INFINITY);
+            return d;
+        }
+        int j = 0;
+        for (int q = 0; q < n; ++q) {
+            while (z[j + 1] < q) {
+                j++;
+            }
+            d[q] = (double) (q - v[j]) * (q - v[j]) + f[v[j]];
+        }
+        return d;
+    }
+
+    // Column of the pixels at x, -1 outside the field
+    private int column(double x) {
+        double column = Math.floor((x - extent.getMinX()) / cellSize);
+        return column < 0 || column >= width ? -1 : (int) column;
+    }
+
+    // Row of the pixels at y, -1 outside the field
+    private int row(double y) {
+        double row = Math.floor((extent.getMaxY() - y) / cellSize);
+        return row < 0 || row >= height ? -1 : (int) row;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    // Distance in metres from the point to the nearest line, infinity if farther than MAX_DISTANCE
+    public double getDistance(double x, double y) {
+        int column = column(x);
+        int row = row(y);
+        int value = column < 0 || row < 0 ? FAR : rows[row].get(column) & FAR;
+        return value == FAR ? Double.POSITIVE_INFINITY : value / 10.0;
+    }
+
+    // Part of the geometry covered by the pixels whose centre is within distance of a line, null when there is none
+    public Geometry within(Geometry geometry, double distance) {
+        if (distance > MAX_DISTANCE) {
+            throw new IllegalArgumentException("Distance field only reaches " + MAX_DISTANCE + " m");
+        }
+        Envelope window = geometry.getEnvelopeInternal();
+        int x0 = Math.max(0, (int) Math.floor((window.getMinX() - extent.getMinX()) / cellSize));
+        int x1 = Math.min(width, (int) Math.ceil((window.getMaxX() - extent.getMinX()) / cellSize));
+        int y0 = Math.max(0, (int) Math.floor((extent.getMaxY() - window.getMaxY()) / cellSize));
+        int y1 = Math.min(height, (int) Math.ceil((extent.getMaxY() - window.getMinY()) / cellSize));
+        if (x0 >= x1 || y0 >= y1) {
+            return null;
+        }
+
+        int limit = (int) Math.floor(distance * 10);
+        boolean[] near = new boolean[(x1 - x0) * (y1 - y0)];
+        int count = 0;
+        for (int y = y0; y < y1; ++y) {
+            for (int x = x0; x < x1; ++x) {
+                if ((rows[y].get(x) & FAR) <= limit) {
+                    near[(y - y0) * (x1 - x0) + x - x0] = true;
+                    count++;
+                }
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        // Pixels outside the field are farther than MAX_DISTANCE
+        if (count == near.length && extent.contains(window)) {
+            return geometry;
+        }
+        Geometry result = geometry.intersection(outline(near, x0, x1, y0, y1, geometry.getFactory()));
+        return result.isEmpty() ? null : result;
+    }
+
+    // Polygons of the marked pixels of a window, traced along the pixel edges
+    private Geometry outline(boolean[] near, int x0, int x1, int y0, int y1, GeometryFactory factory) {
+        int w = x1 - x0;
+        int h = y1 - y0;
+        // Vertex i + k * (w + 1) is the pixel corner i columns right of the window and k rows up from its bottom.
+        // Every edge between a marked and an unmarked pixel goes from one corner to the next with the marked pixel
+        // on its left, so outer rings come out counterclockwise and holes clockwise.
+        int[][] outgoing = new int[2][(w + 1) * (h + 1)];
+        Arrays.fill(outgoing[0], -1);
+        Arrays.fill(outgoing[1], -1);
+        for (int row = 0; row < h; ++row) {
+            for (int c = 0; c < w; ++c) {
+                if (!near[row * w + c]) {
+                    continue;
+                }
+                int k = h - row - 1;
+                if (row + 1 == h || !near[(row + 1) * w + c]) {
+                    addEdge(outgoing, c + k * (w + 1), c + 1 + k * (w + 1));
+                }
+                if (c + 1 == w || !near[row * w + c + 1]) {
+                    addEdge(outgoing, c + 1 + k * (w + 1), c + 1 + (k + 1) * (w + 1));
+                }
+                if (row == 0 || !near[(row - 1) * w + c]) {
+                    addEdge(outgoing, c + 1 + (k + 1) * (w + 1), c + (k + 1) * (w + 1));
+                }
+                if (c == 0 || !near[row * w + c - 1]) {
+                    addEdge(outgoing, c + (k + 1) * (w + 1), c + k * (w + 1));
+                }
+            }
+        }
+
+        List<LinearRing> shells = new ArrayList<>();
+        List<LinearRing> holes = new ArrayList<>();
+        boolean[][] used = new boolean[2][outgoing[0].length];
+        for (int start = 0; start < outgoing[0].length; ++start) {
+            for (int slot = 0; slot < 2; ++slot) {
+                if (outgoing[slot][start] < 0 || used[slot][start]) {
+                    continue;
+                }
+                // Follow the edges, where two pixels meet only at a corner turn left to keep them apart
+                List<Integer> ring = new ArrayList<>();
+                ring.add(start);
+                used[slot][start] = true;
+                int from = start;
+                int to = outgoing[slot][start];
+                while (true) {
+                    int next = turnLeft(outgoing, from, to, w + 1);
+                    if (to == start && next == slot) {
+                        break;
+                    }
+                    ring.add(to);
+                    used[next][to] = true;
+                    from = to;
+                    to = outgoing[next][to];
+                }
+                for (List<Integer> simple : splitAtTouches(ring)) {
+                    Coordinate[] coordinates = corners(simple, x0, y1, w + 1);
+                    LinearRing linearRing = factory.createLinearRing(coordinates);
+                    (CGAlgorithms.isCCW(coordinates) ? shells : holes).add(linearRing);
+                }
+            }
+        }
+
+        // A hole belongs to the smallest outer ring around it
+        List<List<LinearRing>> shellHoles = new ArrayList<>();
+        for (int i = 0; i < shells.size(); ++i) {
+            shellHoles.add(new ArrayList<>());
+        }
+        for (LinearRing hole : holes) {
+            Coordinate a = hole.getCoordinateN(0);
+            Coordinate b = hole.getCoordinateN(1);
+            Coordinate middle = new Coordinate((a.x + b.x) / 2, (a.y + b.y) / 2);
+            int best = -1;
+            double bestArea = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < shells.size(); ++i) {
+                LinearRing shell = shells.get(i);
+                if (shell.getEnvelopeInternal().contains(middle) && CGAlgorithms.isPointInRing(middle, shell.getCoordinates())) {
+                    double area = Math.abs(CGAlgorithms.signedArea(shell.getCoordinates()));
+                    if (area < bestArea) {
+                        best = i;
+                        bestArea = area;
+                    }
+                }
+            }
+            if (best >= 0) {
+                shellHoles.get(best).add(hole);
+            }
+        }
+        Polygon[] polygons = new Polygon[shells.size()];
+        for (int i = 0; i < shells.size(); ++i) {
+            polygons[i] = factory.createPolygon(shells.get(i), shellHoles.get(i).toArray(new LinearRing[0]));
+        }
+        return factory.createMultiPolygon(polygons);
+    }
+
+    private static void addEdge(int[][] outgoing, int from, int to) {
+        outgoing[outgoing[0][from] < 0 ? 0 : 1][from] = to;
+    }
+
+    // Slot of the edge leaving vertex to that turns most to the left of from -> to
+    private static int turnLeft(int[][] outgoing, int from, int to, int stride) {
+        if (outgoing[1][to] < 0) {
+            return 0;
+        }
+        int dx = to % stride - from % stride;
+        int dy = to / stride - from / stride;
+        int[] cross = new int[2];
+        for (int i = 0; i < 2; ++i) {
+            int next = outgoing[i][to];
+            cross[i] = dx * (next / stride - to / stride) - dy * (next % stride - to % stride);
+        }
+        return cross[0] >= cross[1] ? 0 : 1;
+    }
+
+    // A ring that comes back to a corner it passed is cut there into rings that do not touch themselves
+    private static List<List<Integer>> splitAtTouches(List<Integer> ring) {
+        List<List<Integer>> rings = new ArrayList<>();
+        List<Integer> stack = new ArrayList<>();
+        Map<Integer, Integer> positions = new HashMap<>();
+        for (int i = 0; i <= ring.size(); ++i) {
+            int vertex = ring.get(i % ring.size());
+            Integer position = positions.get(vertex);
+            if (position == null) {
+                positions.put(vertex, stack.size());
+                stack.add(vertex);
+                continue;
+            }
+            List<Integer> loop = new ArrayList<>(stack.subList(position, stack.size()));
+            for (int j = position + 1; j < stack.size(); ++j) {
+                positions.remove(stack.get(j));
+            }
+            stack.subList(position + 1, stack.size()).clear();
+            rings.add(loop);
+        }
+        return rings;
+    }
+
+    // Closed ring of map coordinates through the corners only, straight runs of pixel edges become one segment
+    private Coordinate[] corners(List<Integer> ring, int x0, int y1, int stride) {
+        List<Coordinate> coordinates = new ArrayList<>();
+        int n = ring.size();
+        for (int i = 0; i < n; ++i) {
+            int previous = ring.get((i + n - 1) % n);
+            int vertex = ring.get(i);
+            int next = ring.get((i + 1) % n);
+            if (next - vertex == vertex - previous) {
+                continue;
+            }
+            coordinates.add(new Coordinate(extent.getMinX() + (x0 + vertex % stride) * cellSize,
+                    extent.getMaxY() - (y1 - vertex / stride) * cellSize));
+        }
+        coordinates.add(new Coordinate(coordinates.get(0)));
+        return coordinates.toArray(new Coordinate[coordinates.size()]);
+    }
+
+    // Null unless the file holds a whole field of the same extent and cell size
+    private static DistanceField read(File file, Envelope extent, double cellSize) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            // The mappings stay valid after the channel is closed
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != FILE_VERSION) {
+                return null;
+            }
+            Envelope fileExtent = new Envelope(header.getDouble(), header.getDouble(), header.getDouble(), header.getDouble());
+            double fileCellSize = header.getDouble();
+            int width = header.getInt();
+            int height = header.getInt();
+            if (!fileExtent.equals(extent) || fileCellSize != cellSize || channel.size() != HEADER_SIZE + 2L * width * height) {
+                return null;
+            }
+            return new DistanceField(extent, cellSize, width, height,
+                    map(channel, FileChannel.MapMode.READ_ONLY, width, height, null));
+        } catch (IOException e) {
+            System.out.println("Could not read distance field " + file + ": " + e);
+            return null;
+        }
+    }
+}
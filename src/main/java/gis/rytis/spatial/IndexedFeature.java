@@ -0,0 +1,60 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeature;
+
+import java.util.Objects;
+
+public class IndexedFeature {
+    private final SimpleFeature feature;
+    private final Geometry geometry;
+    private volatile long checksum;
+
+    public IndexedFeature(SimpleFeature feature, Geometry geometry) {
+        this.feature = feature;
+        this.geometry = geometry;
+    }
+
+    public SimpleFeature getFeature() {
+        return feature;
+    }
+
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    public Envelope getEnvelope() {
+        return geometry.getEnvelopeInternal();
+    }
+
+    // Hash of the ID, attributes and coordinates, tells whether a feature changed between runs
+    public long getChecksum() {
+        long result = checksum;
+        if (result == 0) {
+            result = mix(feature.getID().hashCode());
+            for (Object attribute : feature.getAttributes()) {
+                if (!(attribute instanceof Geometry)) {
+                    result = mix(result * 31 + Objects.hashCode(attribute));
+                }
+            }
+            for (Coordinate coordinate : geometry.getCoordinates()) {
+                result = mix(result * 31 + Double.doubleToLongBits(coordinate.x));
+                result = mix(result * 31 + Double.doubleToLongBits(coordinate.y));
+            }
+            checksum = result;
+        }
+        return result;
+    }
+
+    // 64-bit finalizer from MurmurHash3
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
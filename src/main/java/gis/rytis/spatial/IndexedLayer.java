@@ -0,0 +1,110 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import gis.rytis.Utilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.map.FeatureLayer;
+import org.opengis.feature.simple.SimpleFeature;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Whole layer loaded once into a packed STRtree, so spatial joins are answered
+ * from memory instead of sending a filter to the data store for every cell.
+ */
+public class IndexedLayer {
+    private static final LayerCache<Void, IndexedLayer> cache = new LayerCache<>();
+
+    private final STRtree tree = new STRtree();
+    private final List<IndexedFeature> features = new ArrayList<>();
+
+    public IndexedLayer(SimpleFeatureCollection collection) throws IOException {
+        collection.accepts(x -> {
+            SimpleFeature sf = (SimpleFeature) x;
+            Geometry geometry = (Geometry) sf.getDefaultGeometry();
+            if (geometry == null || geometry.isEmpty()) {
+                return;
+            }
+            IndexedFeature feature = new IndexedFeature(sf, geometry);
+            features.add(feature);
+            tree.insert(geometry.getEnvelopeInternal(), feature);
+        }, null);
+        // STRtree builds itself on the first query, which is not thread safe
+        tree.build();
+    }
+
+    public static IndexedLayer of(FeatureLayer layer) throws IOException {
+        SimpleFeatureSource source = layer.getSimpleFeatureSource();
+        return cache.get(source, () -> {
+            long start = System.currentTimeMillis();
+            IndexedLayer indexed = new IndexedLayer(source.getFeatures());
+            Utilities.debug("Indexed " + layer.getTitle() + ": " + indexed.size() + " features in " +
+                    (System.currentTimeMillis() - start) + " ms");
+            return indexed;
+        });
+    }
+
+    public int size() {
+        return features.size();
+    }
+
+    public List<IndexedFeature> getFeatures() {
+        return features;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<IndexedFeature> query(Envelope envelope) {
+        return tree.query(envelope);
+    }
+
+    public void query(Envelope envelope, Consumer<IndexedFeature> consumer) {
+        tree.query(envelope, item -> consumer.accept((IndexedFeature) item));
+    }
+
+    public List<IndexedFeature> intersecting(Geometry geometry) {
+        List<IndexedFeature> result = new ArrayList<>();
+        visitIntersecting(geometry, feature -> {
+            result.add(feature);
+            return true;
+        });
+        return result;
+    }
+
+    public int countIntersecting(Geometry geometry) {
+        int[] count = new int[1];
+        visitIntersecting(geometry, feature -> {
+            count[0]++;
+            return true;
+        });
+        return count[0];
+    }
+
+    public boolean anyIntersecting(Geometry geometry) {
+        return !visitIntersecting(geometry, feature -> false);
+    }
+
+    // Passes the features that intersect the geometry to the visitor until it returns false, false if it did.
+    // The query geometry is prepared once for all the candidates, the features are not prepared at all.
+    private boolean visitIntersecting(Geometry geometry, Predicate<IndexedFeature> visitor) {
+        List<IndexedFeature> candidates = query(geometry.getEnvelopeInternal());
+        if (candidates.isEmpty()) {
+            return true;
+        }
+        PreparedGeometry prepared = PreparedGeometryFactory.prepare(geometry);
+        for (IndexedFeature candidate : candidates) {
+            if (prepared.intersects(candidate.getGeometry()) && !visitor.test(candidate)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,285 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+import gis.rytis.SelectableLayer;
+import gis.rytis.Utilities;
+import org.opengis.feature.simple.SimpleFeature;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * PLO_P burned into a grid of Utilities.AreaType classes. A pixel belongs to the polygon that covers its centre,
+ * pixels crossed by a polygon outline are marked as mixed, so the area of a class inside a region is exact up
+ * to the mixed pixels around it.
+ */
+public class LandClassRaster {
+    private static final LayerCache<Double, LandClassRaster> cache = new LayerCache<>();
+    private static final int FILE_VERSION = 1;
+    // Wide enough to touch every pixel a line passes through
+    private static final float OUTLINE_WIDTH = 1.5f;
+
+    private final Envelope extent;
+    private final double cellSize;
+    private final int width;
+    private final int height;
+    // 0 - no polygon, otherwise AreaType.ordinal() + 1
+    private final byte[] classes;
+    // 1 where an outline passes through the pixel
+    private final byte[] edges;
+
+    public static class Counts {
+        private final long[] classes = new long[Utilities.AreaType.values().length];
+        private long mixed;
+
+        public void add(Counts other) {
+            for (int i = 0; i < classes.length; ++i) {
+                classes[i] += other.classes[i];
+            }
+            mixed += other.mixed;
+        }
+
+        public long get(Utilities.AreaType type) {
+            return classes[type.ordinal()];
+        }
+
+        // Pixels that may be only partly inside the region or only partly of their class
+        public long getMixed() {
+            return mixed;
+        }
+    }
+
+    private LandClassRaster(Envelope extent, double cellSize, int width, int height, byte[] classes, byte[] edges) {
+        this.extent = extent;
+        this.cellSize = cellSize;
+        this.width = width;
+        this.height = height;
+        this.classes = classes;
+        this.edges = edges;
+    }
+
+    // Raster of the layer kept in memory and, if cacheDirectory is given, on disk until the shapefile changes
+    public static LandClassRaster of(SelectableLayer layer, double cellSize, File cacheDirectory) throws IOException {
+        return cache.get(layer.getSimpleFeatureSource(), cellSize, () -> load(layer, cellSize, cacheDirectory));
+    }
+
+    private static LandClassRaster load(SelectableLayer layer, double cellSize, File cacheDirectory) throws IOException {
+        File file = null;
+        if (cacheDirectory != null && layer.getSourceFile() != null) {
+            String key = Utilities.getFingerprint(layer.getSourceFile()) + cellSize;
+            file = new File(cacheDirectory, layer.getSourceFile().getName() + "-" + cellSize + "-" +
+                    Integer.toHexString(key.hashCode()) + ".raster");
+        }
+
+        long start = System.currentTimeMillis();
+        LandClassRaster raster = file != null ? read(file) : null;
+        if (raster == null) {
+            raster = rasterize(layer, cellSize);
+            if (file != null) {
+                write(raster, file);
+            }
+        }
+        Utilities.debug("Rasterized " + layer.getTitle() + ": " + raster.width + "x" + raster.height +
+                " pixels of " + cellSize + " m in " + (System.currentTimeMillis() - start) + " ms");
+        return raster;
+    }
+
+    private static LandClassRaster rasterize(SelectableLayer layer, double cellSize) throws IOException {
+        Envelope extent = new Envelope(layer.getBounds());
+        extent.expandBy(cellSize);
+        long pixels = (long) Math.ceil(extent.getWidth() / cellSize) * (long) Math.ceil(extent.getHeight() / cellSize);
+        if (pixels > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Raster cell size " + cellSize + " m is too small for " + layer.getTitle());
+        }
+        int width = (int) Math.ceil(extent.getWidth() / cellSize);
+        int height = (int) Math.ceil(extent.getHeight() / cellSize);
+
+        BufferedImage classImage = createImage(width, height);
+        BufferedImage edgeImage = createImage(width, height);
+        Graphics2D classGraphics = createGraphics(classImage);
+        Graphics2D edgeGraphics = createGraphics(edgeImage);
+        edgeGraphics.setColor(color(1));
+        AffineTransform transform = toPixels(extent, cellSize, 0, 0);
+
+        layer.getSimpleFeatureSource().getFeatures().accepts(x -> {
+            SimpleFeature area = (SimpleFeature) x;
+            Geometry geometry = (Geometry) area.getDefaultGeometry();
+            if (geometry == null || geometry.isEmpty()) {
+                return;
+            }
+            Shape shape = transform.createTransformedShape(toShape(geometry));
+            classGraphics.setColor(color(Utilities.getAreaType(area).ordinal() + 1));
+            classGraphics.fill(shape);
+            edgeGraphics.draw(shape);
+        }, null);
+        classGraphics.dispose();
+        edgeGraphics.dispose();
+
+        return new LandClassRaster(extent, cellSize, width, height, data(classImage), data(edgeImage));
+    }
+
+    // Adds the pixels of the region part (e.g. a cell clip) to counts
+    public void count(Geometry clip, Counts counts) {
+        Envelope env = clip.getEnvelopeInternal();
+        int x0 = Math.max(0, (int) Math.floor((env.getMinX() - extent.getMinX()) / cellSize) - 1);
+        int x1 = Math.min(width, (int) Math.ceil((env.getMaxX() - extent.getMinX()) / cellSize) + 1);
+        int y0 = Math.max(0, (int) Math.floor((extent.getMaxY() - env.getMaxY()) / cellSize) - 1);
+        int y1 = Math.min(height, (int) Math.ceil((extent.getMaxY() - env.getMinY()) / cellSize) + 1);
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+        int windowWidth = x1 - x0;
+        int windowHeight = y1 - y0;
+
+        Shape shape = toPixels(extent, cellSize, x0, y0).createTransformedShape(toShape(clip));
+        BufferedImage insideImage = createImage(windowWidth, windowHeight);
+        BufferedImage borderImage = createImage(windowWidth, windowHeight);
+        Graphics2D insideGraphics = createGraphics(insideImage);
+        insideGraphics.setColor(color(1));
+        insideGraphics.fill(shape);
+        insideGraphics.dispose();
+        Graphics2D borderGraphics = createGraphics(borderImage);
+        borderGraphics.setColor(color(1));
+        borderGraphics.draw(shape);
+        borderGraphics.dispose();
+        byte[] inside = data(insideImage);
+        byte[] border = data(borderImage);
+
+        for (int y = 0; y < windowHeight; ++y) {
+            for (int x = 0; x < windowWidth; ++x) {
+                int window = y * windowWidth + x;
+                int pixel = (y0 + y) * width + x0 + x;
+                if (inside[window] != 0 && classes[pixel] != 0) {
+                    counts.classes[classes[pixel] - 1]++;
+                }
+                if (border[window] != 0 || (inside[window] != 0 && edges[pixel] != 0)) {
+                    counts.mixed++;
+                }
+            }
+        }
+    }
+
+    public double getPixelArea() {
+        return cellSize * cellSize;
+    }
+
+    // World coordinates to pixels of the window starting at (x0, y0), y grows downwards
+    private static AffineTransform toPixels(Envelope extent, double cellSize, int x0, int y0) {
+        AffineTransform transform = new AffineTransform();
+        transform.translate(-x0, -y0);
+        transform.scale(1 / cellSize, -1 / cellSize);
+        transform.translate(-extent.getMinX(), -extent.getMaxY());
+        return transform;
+    }
+
+    private static Shape toShape(Geometry geometry) {
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+        for (int i = 0; i < geometry.getNumGeometries(); ++i) {
+            Geometry part = geometry.getGeometryN(i);
+            if (part instanceof Polygon) {
+                Polygon polygon = (Polygon) part;
+                addRing(path, polygon.getExteriorRing());
+                for (int j = 0; j < polygon.getNumInteriorRing(); ++j) {
+                    addRing(path, polygon.getInteriorRingN(j));
+                }
+            }
+        }
+        return path;
+    }
+
+    private static void addRing(Path2D.Double path, LineString ring) {
+        Coordinate[] coordinates = ring.getCoordinates();
+        if (coordinates.length == 0) {
+            return;
+        }
+        path.moveTo(coordinates[0].x, coordinates[0].y);
+        for (int i = 1; i < coordinates.length; ++i) {
+            path.lineTo(coordinates[i].x, coordinates[i].y);
+        }
+        path.closePath();
+    }
+
+    // Indexed image, so a pixel value is exactly the palette index it was painted with
+    private static BufferedImage createImage(int width, int height) {
+        byte[] palette = new byte[256];
+        for (int i = 0; i < palette.length; ++i) {
+            palette[i] = (byte) i;
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED,
+                new IndexColorModel(8, 256, palette, palette, palette));
+    }
+
+    private static Graphics2D createGraphics(BufferedImage image) {
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+        graphics.setStroke(new BasicStroke(OUTLINE_WIDTH));
+        return graphics;
+    }
+
+    private static Color color(int index) {
+        return new Color(index, index, index);
+    }
+
+    private static byte[] data(BufferedImage image) {
+        return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+
+    private static LandClassRaster read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != FILE_VERSION) {
+                return null;
+            }
+            Envelope extent = new Envelope(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+            double cellSize = in.readDouble();
+            int width = in.readInt();
+            int height = in.readInt();
+            byte[] classes = new byte[width * height];
+            byte[] edges = new byte[width * height];
+            in.readFully(classes);
+            in.readFully(edges);
+            return new LandClassRaster(extent, cellSize, width, height, classes, edges);
+        } catch (IOException e) {
+            System.out.println("Could not read raster " + file + ": " + e);
+            return null;
+        }
+    }
+
+    private static void write(LandClassRaster raster, File file) {
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temp))))) {
+                out.writeInt(FILE_VERSION);
+                out.writeDouble(raster.extent.getMinX());
+                out.writeDouble(raster.extent.getMaxX());
+                out.writeDouble(raster.extent.getMinY());
+                out.writeDouble(raster.extent.getMaxY());
+                out.writeDouble(raster.cellSize);
+                out.writeInt(raster.width);
+                out.writeInt(raster.height);
+                out.write(raster.classes);
+                out.write(raster.edges);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Could not cache raster " + file + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package gis.rytis.spatial;
+
+import org.geotools.data.FeatureSource;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Data built from the features of a layer, one value per source and key (e.g. the cell size). A value is built
+ * by the first thread that asks for it, later ones wait for that value only and not for other sources or keys.
+ * Values are dropped together with their source. Data that depends on the source alone is kept under no key
+ * (e.g. LayerCache&lt;Void, IndexedLayer&gt;).
+ */
+class LayerCache<K, V> {
+    interface Builder<V> {
+        V build() throws IOException;
+    }
+
+    private static final Object NO_KEY = new Object();
+
+    private final Map<FeatureSource, Map<Object, FutureTask<V>>> values = new WeakHashMap<>();
+
+    V get(FeatureSource source, Builder<V> builder) throws IOException {
+        return getValue(source, NO_KEY, builder);
+    }
+
+    V get(FeatureSource source, K key, Builder<V> builder) throws IOException {
+        return getValue(source, key, builder);
+    }
+
+    private V getValue(FeatureSource source, Object key, Builder<V> builder) throws IOException {
+        Map<Object, FutureTask<V>> byKey;
+        synchronized (values) {
+            byKey = values.computeIfAbsent(source, x -> new ConcurrentHashMap<>());
+        }
+
+        // The builder usually holds the layer, FutureTask lets go of it once the value is built
+        FutureTask<V> task = new FutureTask<>(builder::build);
+        FutureTask<V> existing = byKey.putIfAbsent(key, task);
+        if (existing == null) {
+            task.run();
+        } else {
+            task = existing;
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + source.getName());
+        } catch (ExecutionException e) {
+            // Not kept, the next call builds it again
+            byKey.remove(key, task);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
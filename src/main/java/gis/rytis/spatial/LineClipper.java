@@ -0,0 +1,389 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Length of lines inside one cell of a region, walked segment by segment instead of building the
+ * intersection geometry. Cells fully inside the region are clipped to the rectangle (Liang-Barsky),
+ * border cells against the edges of the clip polygon, which are bucketed into horizontal bands.
+ * A line along the border of two cells is counted in one of them only: the cell takes its bottom and left
+ * edges, and its top and right ones only where they are the outline of the region (no cell above or to the
+ * right has the region there). Lines along the outline of the region inside a cell are counted as well.
+ * Not thread safe, every cell gets its own instance.
+ */
+public class LineClipper {
+    private final Envelope envelope;
+    private final boolean rectangle;
+    private final Geometry region;
+    // Parts of the top (x from, to) and right (y from, to) edges of the cell where the region is inside the
+    // cell and not beyond it, found on first use
+    private double[] topEdges, rightEdges;
+
+    private double[] x1, y1, x2, y2;
+    private int[][] bands;
+    private int bandCount;
+    private double bandMinY, bandHeight;
+
+    // Scratch space, reused for every segment
+    private int[] seen;
+    private int stamp = 0;
+    private double[] crossings = new double[16];
+    // Parts of the segment lying on a clip edge, t from, t to
+    private double[] onEdge = new double[8];
+    private double clipFrom, clipTo;
+
+    public LineClipper(RegionCell cell) {
+        this.envelope = cell.getEnvelope();
+        this.rectangle = cell.isInside();
+        this.region = cell.getRegion();
+        if (!rectangle) {
+            indexEdges(cell.getClip());
+        }
+    }
+
+    public double length(Geometry line) {
+        Envelope lineEnvelope = line.getEnvelopeInternal();
+        if (!envelope.intersects(lineEnvelope)) {
+            return 0;
+        }
+        if (rectangle && envelope.contains(lineEnvelope)
+                && lineEnvelope.getMaxX() < envelope.getMaxX() && lineEnvelope.getMaxY() < envelope.getMaxY()) {
+            return line.getLength();
+        }
+        if (!rectangle && !hasEdges(lineEnvelope)) {
+            // No clip edge near the line, it is either fully inside or fully outside
+            CoordinateSequence sequence = firstSequence(line);
+            if (sequence == null || !inside(sequence.getX(0), sequence.getY(0))) {
+                return 0;
+            }
+            return line.getLength();
+        }
+
+        double result = 0;
+        for (int i = 0; i < line.getNumGeometries(); ++i) {
+            Geometry part = line.getGeometryN(i);
+            if (!(part instanceof LineString)) {
+                continue;
+            }
+            CoordinateSequence sequence = ((LineString) part).getCoordinateSequence();
+            for (int j = 1; j < sequence.size(); ++j) {
+                double ax = sequence.getX(j - 1);
+                double ay = sequence.getY(j - 1);
+                double bx = sequence.getX(j);
+                double by = sequence.getY(j);
+                result += rectangle ? rectangleLength(ax, ay, bx, by) : polygonLength(ax, ay, bx, by);
+            }
+        }
+        return result;
+    }
+
+    // Liang-Barsky
+    private double rectangleLength(double ax, double ay, double bx, double by) {
+        if (onTopOrRight(ax, ay, bx, by)) {
+            return outlineLength(ax, ay, bx, by);
+        }
+        double dx = bx - ax;
+        double dy = by - ay;
+        clipFrom = 0;
+        clipTo = 1;
+        if (clip(-dx, ax - envelope.getMinX(), true) && clip(dx, envelope.getMaxX() - ax, false)
+                && clip(-dy, ay - envelope.getMinY(), true) && clip(dy, envelope.getMaxY() - ay, false)) {
+            return (clipTo - clipFrom) * Math.sqrt(dx * dx + dy * dy);
+        }
+        return 0;
+    }
+
+    // A segment parallel to an edge and lying on it is kept only on the bottom and left edges
+    private boolean clip(double p, double q, boolean closed) {
+        if (p == 0) {
+            return closed ? q >= 0 : q > 0;
+        }
+        double r = q / p;
+        if (p < 0) {
+            clipFrom = Math.max(clipFrom, r);
+        } else {
+            clipTo = Math.min(clipTo, r);
+        }
+        return clipFrom <= clipTo;
+    }
+
+    // Splits the segment where it crosses the clip edges and keeps the pieces whose middle is inside
+    private double polygonLength(double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double segmentLength = Math.sqrt(dx * dx + dy * dy);
+        if (segmentLength == 0) {
+            return 0;
+        }
+        if (onTopOrRight(ax, ay, bx, by)) {
+            return outlineLength(ax, ay, bx, by);
+        }
+
+        int count = 0;
+        int onEdgeCount = 0;
+        int fromBand = band(Math.min(ay, by));
+        int toBand = band(Math.max(ay, by));
+        double minX = Math.min(ax, bx);
+        double maxX = Math.max(ax, bx);
+        stamp++;
+        for (int b = fromBand; b <= toBand; ++b) {
+            for (int e : bands[b]) {
+                if (seen[e] == stamp) {
+                    continue;
+                }
+                seen[e] = stamp;
+                if (Math.max(x1[e], x2[e]) < minX || Math.min(x1[e], x2[e]) > maxX) {
+                    continue;
+                }
+                double ex = x2[e] - x1[e];
+                double ey = y2[e] - y1[e];
+                double denominator = dx * ey - dy * ex;
+                if (denominator == 0) {
+                    // The edge is parallel, if it lies on the segment its ends split the segment as well
+                    double[] overlap = overlap(ax, ay, bx, by, e);
+                    if (overlap != null) {
+                        if (count + 2 > crossings.length) {
+                            crossings = Arrays.copyOf(crossings, crossings.length * 2);
+                        }
+                        crossings[count++] = overlap[0];
+                        crossings[count++] = overlap[1];
+                        if (onEdgeCount + 2 > onEdge.length) {
+                            onEdge = Arrays.copyOf(onEdge, onEdge.length * 2);
+                        }
+                        onEdge[onEdgeCount++] = overlap[0];
+                        onEdge[onEdgeCount++] = overlap[1];
+                    }
+                    continue;
+                }
+                double t = ((x1[e] - ax) * ey - (y1[e] - ay) * ex) / denominator;
+                double u = ((x1[e] - ax) * dy - (y1[e] - ay) * dx) / denominator;
+                if (t > 0 && t < 1 && u >= 0 && u <= 1) {
+                    if (count == crossings.length) {
+                        crossings = Arrays.copyOf(crossings, count * 2);
+                    }
+                    crossings[count++] = t;
+                }
+            }
+        }
+
+        if (count == 0) {
+            return inside(ax + dx / 2, ay + dy / 2) ? segmentLength : 0;
+        }
+        Arrays.sort(crossings, 0, count);
+        double result = 0;
+        double previous = 0;
+        for (int i = 0; i <= count; ++i) {
+            double next = i < count ? crossings[i] : 1;
+            double middle = (previous + next) / 2;
+            if (next > previous && (onEdge(middle, onEdgeCount) || inside(ax + dx * middle, ay + dy * middle))) {
+                result += (next - previous) * segmentLength;
+            }
+            previous = next;
+        }
+        return result;
+    }
+
+    // Range of t where edge e lies on the segment, null if it does not
+    private double[] overlap(double ax, double ay, double bx, double by, int e) {
+        Coordinate a = new Coordinate(ax, ay);
+        Coordinate b = new Coordinate(bx, by);
+        if (CGAlgorithms.orientationIndex(a, b, new Coordinate(x1[e], y1[e])) != 0
+                || CGAlgorithms.orientationIndex(a, b, new Coordinate(x2[e], y2[e])) != 0) {
+            return null;
+        }
+        double dx = bx - ax;
+        double dy = by - ay;
+        double squaredLength = dx * dx + dy * dy;
+        double t1 = ((x1[e] - ax) * dx + (y1[e] - ay) * dy) / squaredLength;
+        double t2 = ((x2[e] - ax) * dx + (y2[e] - ay) * dy) / squaredLength;
+        double from = Math.max(0, Math.min(t1, t2));
+        double to = Math.min(1, Math.max(t1, t2));
+        return from < to ? new double[]{from, to} : null;
+    }
+
+    private boolean onEdge(double t, int onEdgeCount) {
+        for (int i = 0; i < onEdgeCount; i += 2) {
+            if (onEdge[i] <= t && t <= onEdge[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean onTopOrRight(double ax, double ay, double bx, double by) {
+        return ay == by && ay == envelope.getMaxY() || ax == bx && ax == envelope.getMaxX();
+    }
+
+    // A segment on the top or right edge of the cell belongs to the cell above or to the right of it, except
+    // where the region ends at that edge
+    private double outlineLength(double ax, double ay, double bx, double by) {
+        if (topEdges == null) {
+            findOutlineEdges();
+        }
+        boolean top = ay == by && ay == envelope.getMaxY();
+        double[] edges = top ? topEdges : rightEdges;
+        double from = top ? Math.max(Math.min(ax, bx), envelope.getMinX()) : Math.max(Math.min(ay, by), envelope.getMinY());
+        double to = top ? Math.min(Math.max(ax, bx), envelope.getMaxX()) : Math.min(Math.max(ay, by), envelope.getMaxY());
+        double result = 0;
+        for (int i = 0; i < edges.length; i += 2) {
+            result += Math.max(0, Math.min(to, edges[i + 1]) - Math.max(from, edges[i]));
+        }
+        return result;
+    }
+
+    // Outline edges of the region along the top and right edges of the cell with the region below or to the
+    // left of them, the side comes from the orientation of the ring
+    private void findOutlineEdges() {
+        List<Double> top = new ArrayList<>();
+        List<Double> right = new ArrayList<>();
+        for (int i = 0; i < region.getNumGeometries(); ++i) {
+            Geometry part = region.getGeometryN(i);
+            if (part instanceof Polygon && !part.isEmpty()) {
+                Polygon polygon = (Polygon) part;
+                addOutlineEdges(polygon.getExteriorRing(), false, top, right);
+                for (int j = 0; j < polygon.getNumInteriorRing(); ++j) {
+                    addOutlineEdges(polygon.getInteriorRingN(j), true, top, right);
+                }
+            }
+        }
+        topEdges = top.stream().mapToDouble(Double::doubleValue).toArray();
+        rightEdges = right.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    private void addOutlineEdges(LineString ring, boolean hole, List<Double> top, List<Double> right) {
+        CoordinateSequence sequence = ring.getCoordinateSequence();
+        // Walking the ring the region is on the left of every edge
+        boolean regionOnLeft = CGAlgorithms.isCCW(ring.getCoordinates()) != hole;
+        for (int i = 1; i < sequence.size(); ++i) {
+            double ax = sequence.getX(i - 1);
+            double ay = sequence.getY(i - 1);
+            double bx = sequence.getX(i);
+            double by = sequence.getY(i);
+            if (ay == by && ay == envelope.getMaxY() && (bx < ax) == regionOnLeft) {
+                top.add(Math.min(ax, bx));
+                top.add(Math.max(ax, bx));
+            } else if (ax == bx && ax == envelope.getMaxX() && (by > ay) == regionOnLeft) {
+                right.add(Math.min(ay, by));
+                right.add(Math.max(ay, by));
+            }
+        }
+    }
+
+    // Even-odd ray casting to the right, only the edges of the point's band can cross the ray
+    private boolean inside(double px, double py) {
+        if (py < envelope.getMinY() || py > envelope.getMaxY()) {
+            return false;
+        }
+        boolean result = false;
+        for (int e : bands[band(py)]) {
+            if ((y1[e] > py) != (y2[e] > py)) {
+                double x = x1[e] + (py - y1[e]) * (x2[e] - x1[e]) / (y2[e] - y1[e]);
+                if (px < x) {
+                    result = !result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private boolean hasEdges(Envelope lineEnvelope) {
+        int fromBand = band(lineEnvelope.getMinY());
+        int toBand = band(lineEnvelope.getMaxY());
+        for (int b = fromBand; b <= toBand; ++b) {
+            for (int e : bands[b]) {
+                if (Math.max(x1[e], x2[e]) >= lineEnvelope.getMinX() && Math.min(x1[e], x2[e]) <= lineEnvelope.getMaxX()
+                        && Math.max(y1[e], y2[e]) >= lineEnvelope.getMinY() && Math.min(y1[e], y2[e]) <= lineEnvelope.getMaxY()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private int band(double y) {
+        int result = (int) ((y - bandMinY) / bandHeight);
+        return Math.max(0, Math.min(bandCount - 1, result));
+    }
+
+    private void indexEdges(Geometry clip) {
+        int edgeCount = 0;
+        for (int i = 0; i < clip.getNumGeometries(); ++i) {
+            Geometry part = clip.getGeometryN(i);
+            if (part instanceof Polygon && !part.isEmpty()) {
+                Polygon polygon = (Polygon) part;
+                edgeCount += polygon.getExteriorRing().getNumPoints() - 1;
+                for (int j = 0; j < polygon.getNumInteriorRing(); ++j) {
+                    edgeCount += polygon.getInteriorRingN(j).getNumPoints() - 1;
+                }
+            }
+        }
+
+        x1 = new double[edgeCount];
+        y1 = new double[edgeCount];
+        x2 = new double[edgeCount];
+        y2 = new double[edgeCount];
+        seen = new int[edgeCount];
+        int[] next = {0};
+        for (int i = 0; i < clip.getNumGeometries(); ++i) {
+            Geometry part = clip.getGeometryN(i);
+            if (part instanceof Polygon && !part.isEmpty()) {
+                Polygon polygon = (Polygon) part;
+                addRing(polygon.getExteriorRing(), next);
+                for (int j = 0; j < polygon.getNumInteriorRing(); ++j) {
+                    addRing(polygon.getInteriorRingN(j), next);
+                }
+            }
+        }
+
+        bandCount = Math.max(1, Math.min(1024, edgeCount / 4));
+        bandMinY = envelope.getMinY();
+        bandHeight = envelope.getHeight() > 0 ? envelope.getHeight() / bandCount : 1;
+        int[] sizes = new int[bandCount];
+        for (int e = 0; e < edgeCount; ++e) {
+            for (int b = band(Math.min(y1[e], y2[e])); b <= band(Math.max(y1[e], y2[e])); ++b) {
+                sizes[b]++;
+            }
+        }
+        bands = new int[bandCount][];
+        for (int b = 0; b < bandCount; ++b) {
+            bands[b] = new int[sizes[b]];
+            sizes[b] = 0;
+        }
+        for (int e = 0; e < edgeCount; ++e) {
+            for (int b = band(Math.min(y1[e], y2[e])); b <= band(Math.max(y1[e], y2[e])); ++b) {
+                bands[b][sizes[b]++] = e;
+            }
+        }
+    }
+
+    private void addRing(LineString ring, int[] next) {
+        CoordinateSequence sequence = ring.getCoordinateSequence();
+        for (int i = 1; i < sequence.size(); ++i) {
+            int e = next[0]++;
+            x1[e] = sequence.getX(i - 1);
+            y1[e] = sequence.getY(i - 1);
+            x2[e] = sequence.getX(i);
+            y2[e] = sequence.getY(i);
+        }
+    }
+
+    private static CoordinateSequence firstSequence(Geometry line) {
+        for (int i = 0; i < line.getNumGeometries(); ++i) {
+            Geometry part = line.getGeometryN(i);
+            if (part instanceof LineString && !part.isEmpty()) {
+                return ((LineString) part).getCoordinateSequence();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,115 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import com.vividsolutions.jts.operation.union.UnaryUnionOp;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Union of polygons done only where they actually meet: the polygons are grouped into connected components
+ * and every component is unioned on its own. Polygons that touch nothing are returned as they are, so a layer
+ * of mostly separate polygons (buildings) costs almost no overlay work.
+ */
+public class OverlapUnion {
+    // Geometries unioned together in one task, small enough to give every core work on the upper levels
+    private static final int TILE_SIZE = 32;
+
+    // Disjoint pieces covering the same area as the union of all the geometries
+    public static List<Geometry> union(List<Geometry> geometries) {
+        int n = geometries.size();
+        if (n < 2) {
+            return geometries;
+        }
+
+        STRtree tree = new STRtree();
+        for (int i = 0; i < n; ++i) {
+            tree.insert(geometries.get(i).getEnvelopeInternal(), i);
+        }
+        tree.build();
+
+        int[] parent = new int[n];
+        for (int i = 0; i < n; ++i) {
+            parent[i] = i;
+        }
+        for (int i = 0; i < n; ++i) {
+            Geometry geometry = geometries.get(i);
+            for (Object item : tree.query(geometry.getEnvelopeInternal())) {
+                int j = (Integer) item;
+                if (j > i && find(parent, i) != find(parent, j) && geometry.intersects(geometries.get(j))) {
+                    parent[find(parent, j)] = find(parent, i);
+                }
+            }
+        }
+
+        int[] size = new int[n];
+        for (int i = 0; i < n; ++i) {
+            size[find(parent, i)]++;
+        }
+        Map<Integer, List<Geometry>> components = new HashMap<>();
+        List<Geometry> result = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            int root = find(parent, i);
+            if (size[root] == 1) {
+                result.add(geometries.get(i));
+            } else {
+                components.computeIfAbsent(root, x -> new ArrayList<>()).add(geometries.get(i));
+            }
+        }
+        for (List<Geometry> component : components.values()) {
+            result.add(UnaryUnionOp.union(component));
+        }
+        return result;
+    }
+
+    // Union of everything at once for overlapping layers (road buffers): spatially close geometries are unioned
+    // in parallel tiles, then the tiles are merged the same way level by level until one geometry is left
+    public static Geometry tiledUnion(List<Geometry> geometries, GeometryFactory factory) {
+        if (geometries.isEmpty()) {
+            return factory.createGeometryCollection(new Geometry[0]);
+        }
+        List<Geometry> level = geometries;
+        while (level.size() > 1) {
+            level = tiles(level).parallelStream()
+                    .map(tile -> tile.size() == 1 ? tile.get(0) : UnaryUnionOp.union(tile))
+                    .collect(Collectors.toList());
+        }
+        return level.get(0);
+    }
+
+    // Sort-tile-recursive grouping: vertical slices by centre x, every slice cut into tiles by centre y
+    private static List<List<Geometry>> tiles(List<Geometry> geometries) {
+        int tileCount = (geometries.size() + TILE_SIZE - 1) / TILE_SIZE;
+        int sliceSize = TILE_SIZE * (int) Math.ceil(Math.sqrt(tileCount));
+        List<Geometry> sorted = new ArrayList<>(geometries);
+        sorted.sort(Comparator.comparingDouble(x -> centre(x.getEnvelopeInternal().getMinX(), x.getEnvelopeInternal().getMaxX())));
+
+        List<List<Geometry>> result = new ArrayList<>();
+        for (int i = 0; i < sorted.size(); i += sliceSize) {
+            List<Geometry> slice = new ArrayList<>(sorted.subList(i, Math.min(sorted.size(), i + sliceSize)));
+            slice.sort(Comparator.comparingDouble(x -> centre(x.getEnvelopeInternal().getMinY(), x.getEnvelopeInternal().getMaxY())));
+            for (int j = 0; j < slice.size(); j += TILE_SIZE) {
+                result.add(slice.subList(j, Math.min(slice.size(), j + TILE_SIZE)));
+            }
+        }
+        return result;
+    }
+
+    private static double centre(double min, double max) {
+        return (min + max) / 2;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+}
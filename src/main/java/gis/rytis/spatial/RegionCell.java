@@ -0,0 +1,43 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+public class RegionCell {
+    private final Envelope envelope;
+    private final Geometry geometry;
+    private final Geometry clip;
+    private final boolean inside;
+    private final Geometry region;
+
+    public RegionCell(Envelope envelope, Geometry geometry, Geometry clip, boolean inside, Geometry region) {
+        this.envelope = envelope;
+        this.geometry = geometry;
+        this.clip = clip;
+        this.inside = inside;
+        this.region = region;
+    }
+
+    public Envelope getEnvelope() {
+        return envelope;
+    }
+
+    // Cell rectangle
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    // Part of the region inside the cell, the rectangle itself when the cell is fully inside
+    public Geometry getClip() {
+        return clip;
+    }
+
+    public boolean isInside() {
+        return inside;
+    }
+
+    // Whole region the cell was cut from
+    public Geometry getRegion() {
+        return region;
+    }
+}
@@ -0,0 +1,144 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a region into cells for the statistics overlays. Cells outside the region are dropped and
+ * cells fully inside it are used as they are, only border cells pay for the region intersection.
+ */
+public class RegionGrid {
+    public enum Mode {
+        FIXED, ADAPTIVE
+    }
+
+    // -Dgis.stats.grid=fixed brings back the plain GRID_WIDTH x GRID_HEIGHT grid
+    public static final Mode MODE = parseMode(System.getProperty("gis.stats.grid", "adaptive"));
+    private static final int MAX_DEPTH = 7;
+
+    private final Geometry region;
+    private final PreparedGeometry preparedRegion;
+    private final GeometryFactory gf;
+
+    private RegionGrid(Geometry region) {
+        this.region = region;
+        this.preparedRegion = PreparedGeometryFactory.prepare(region);
+        this.gf = region.getFactory();
+    }
+
+    static Mode parseMode(String value) {
+        try {
+            return Mode.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unknown gis.stats.grid value " + value + ", using adaptive");
+            return Mode.ADAPTIVE;
+        }
+    }
+
+    public static List<RegionCell> create(Geometry region, int gridWidth, int gridHeight, CellBudget budget, IndexedLayer... layers) {
+        if (MODE == Mode.FIXED) {
+            return fixed(region, gridWidth, gridHeight);
+        }
+        return adaptive(region, budget, layers);
+    }
+
+    // What create() does with these parameters, e.g. as part of a cache key
+    public static String describe(int gridWidth, int gridHeight, CellBudget budget) {
+        if (MODE == Mode.FIXED) {
+            return "fixed " + gridWidth + "x" + gridHeight;
+        }
+        return "adaptive " + budget + " depth " + MAX_DEPTH;
+    }
+
+    public static List<RegionCell> fixed(Geometry region, int gridWidth, int gridHeight) {
+        RegionGrid grid = new RegionGrid(region);
+        Envelope env = region.getEnvelopeInternal();
+        double cellWidth = env.getWidth() / gridWidth;
+        double cellHeight = env.getHeight() / gridHeight;
+
+        List<RegionCell> cells = new ArrayList<>();
+        for (int i = 0; i < gridWidth; ++i) {
+            for (int j = 0; j < gridHeight; ++j) {
+                double maxX = i == gridWidth - 1 ? env.getMaxX() : env.getMinX() + (i + 1) * cellWidth;
+                double maxY = j == gridHeight - 1 ? env.getMaxY() : env.getMinY() + (j + 1) * cellHeight;
+                Envelope cellEnv = new Envelope(env.getMinX() + i * cellWidth, maxX, env.getMinY() + j * cellHeight, maxY);
+                Geometry cellGeometry = grid.gf.toGeometry(cellEnv);
+                if (grid.preparedRegion.intersects(cellGeometry)) {
+                    grid.addCell(cellEnv, cellGeometry, cells);
+                }
+            }
+        }
+        return cells;
+    }
+
+    // The region as a single cell, nothing is clipped
+    public static RegionCell whole(Geometry region) {
+        Envelope env = region.getEnvelopeInternal();
+        return new RegionCell(env, region.getFactory().toGeometry(env), region, false, region);
+    }
+
+    // Quadtree split of the region envelope until every cell holds no more than the budget
+    public static List<RegionCell> adaptive(Geometry region, CellBudget budget, IndexedLayer... layers) {
+        RegionGrid grid = new RegionGrid(region);
+        List<RegionCell> cells = new ArrayList<>();
+        Envelope env = region.getEnvelopeInternal();
+        grid.subdivide(env, grid.load(env, budget, layers), 0, budget, layers, cells);
+        return cells;
+    }
+
+    private void subdivide(Envelope env, long load, int depth, CellBudget budget, IndexedLayer[] layers, List<RegionCell> cells) {
+        Geometry cellGeometry = gf.toGeometry(env);
+        if (!preparedRegion.intersects(cellGeometry)) {
+            return;
+        }
+
+        if (depth < MAX_DEPTH && load > budget.getLimit()) {
+            double midX = (env.getMinX() + env.getMaxX()) / 2;
+            double midY = (env.getMinY() + env.getMaxY()) / 2;
+            Envelope[] quarters = {
+                    new Envelope(env.getMinX(), midX, env.getMinY(), midY),
+                    new Envelope(midX, env.getMaxX(), env.getMinY(), midY),
+                    new Envelope(env.getMinX(), midX, midY, env.getMaxY()),
+                    new Envelope(midX, env.getMaxX(), midY, env.getMaxY())
+            };
+            long[] loads = new long[quarters.length];
+            long largest = 0;
+            for (int i = 0; i < quarters.length; ++i) {
+                loads[i] = load(quarters[i], budget, layers);
+                largest = Math.max(largest, loads[i]);
+            }
+            // Features are counted whole, so when all of them reach into one quarter (e.g. a single polygon
+            // over the budget) splitting does not lower the load and would go on down to MAX_DEPTH
+            if (largest < load) {
+                for (int i = 0; i < quarters.length; ++i) {
+                    subdivide(quarters[i], loads[i], depth + 1, budget, layers, cells);
+                }
+                return;
+            }
+        }
+
+        addCell(env, cellGeometry, cells);
+    }
+
+    private long load(Envelope env, CellBudget budget, IndexedLayer[] layers) {
+        long[] load = {0};
+        for (IndexedLayer layer : layers) {
+            layer.query(env, x -> load[0] += budget.measure(x));
+        }
+        return load[0];
+    }
+
+    private void addCell(Envelope env, Geometry cellGeometry, List<RegionCell> cells) {
+        if (preparedRegion.contains(cellGeometry)) {
+            cells.add(new RegionCell(env, cellGeometry, cellGeometry, true, region));
+        } else {
+            cells.add(new RegionCell(env, cellGeometry, region.intersection(cellGeometry), false, region));
+        }
+    }
+}
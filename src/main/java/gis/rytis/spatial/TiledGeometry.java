@@ -0,0 +1,70 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import com.vividsolutions.jts.operation.union.UnaryUnionOp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Large geometry (e.g. a unioned road buffer) cut into a grid of small prepared tiles, so an overlay
+ * with a small geometry only touches the tiles around it. Thread safe once built.
+ */
+public class TiledGeometry {
+    private static final int MAX_TILES_PER_SIDE = 64;
+
+    private static class Tile {
+        private final RegionCell cell;
+        private final PreparedGeometry prepared;
+
+        private Tile(RegionCell cell) {
+            this.cell = cell;
+            this.prepared = PreparedGeometryFactory.prepare(cell.getClip());
+        }
+    }
+
+    private final STRtree tree = new STRtree();
+    private final int tileCount;
+
+    public TiledGeometry(Geometry geometry, int verticesPerTile) {
+        int side = (int) Math.ceil(Math.sqrt((double) geometry.getNumPoints() / verticesPerTile));
+        side = Math.max(1, Math.min(MAX_TILES_PER_SIDE, side));
+        List<RegionCell> cells = geometry.isEmpty() ? new ArrayList<>() : RegionGrid.fixed(geometry, side, side);
+        for (RegionCell cell : cells) {
+            if (!cell.getClip().isEmpty()) {
+                tree.insert(cell.getEnvelope(), new Tile(cell));
+            }
+        }
+        tree.build();
+        tileCount = cells.size();
+    }
+
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    // Part of the other geometry inside this one, null when they do not meet, the geometry itself when it is covered
+    public Geometry intersection(Geometry other) {
+        List<Geometry> pieces = new ArrayList<>();
+        for (Object item : tree.query(other.getEnvelopeInternal())) {
+            Tile tile = (Tile) item;
+            if (!tile.prepared.intersects(other)) {
+                continue;
+            }
+            if (tile.prepared.covers(other)) {
+                return other;
+            }
+            Geometry piece = tile.cell.getClip().intersection(other);
+            if (!piece.isEmpty()) {
+                pieces.add(piece);
+            }
+        }
+        if (pieces.isEmpty()) {
+            return null;
+        }
+        return pieces.size() == 1 ? pieces.get(0) : UnaryUnionOp.union(pieces);
+    }
+}
@@ -0,0 +1,66 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Min and max of a numeric attribute over the features of an indexed layer intersecting each zone,
+ * all zones in one parallel pass over the index. Zones without any feature get NaN.
+ */
+public class ZonalRange {
+    private final double[] min;
+    private final double[] max;
+
+    private ZonalRange(double[] min, double[] max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    public static ZonalRange of(List<? extends Geometry> zones, IndexedLayer layer, String attribute) {
+        double[] min = new double[zones.size()];
+        double[] max = new double[zones.size()];
+        Arrays.fill(min, Double.NaN);
+        Arrays.fill(max, Double.NaN);
+
+        IntStream.range(0, zones.size()).parallel().forEach(i -> {
+            Geometry zone = zones.get(i);
+            PreparedGeometry prepared = PreparedGeometryFactory.prepare(zone);
+            double[] range = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+            layer.query(zone.getEnvelopeInternal(), feature -> {
+                double value = ((Number) feature.getFeature().getAttribute(attribute)).doubleValue();
+                // Values inside the range found so far cannot change it, no need for the exact test
+                if ((value < range[0] || value > range[1]) && prepared.intersects(feature.getGeometry())) {
+                    range[0] = Math.min(range[0], value);
+                    range[1] = Math.max(range[1], value);
+                }
+            });
+            if (range[0] <= range[1]) {
+                min[i] = range[0];
+                max[i] = range[1];
+            }
+        });
+        return new ZonalRange(min, max);
+    }
+
+    public double getMin(int zone) {
+        return min[zone];
+    }
+
+    public double getMax(int zone) {
+        return max[zone];
+    }
+
+    // max - min of every zone
+    public double[] getDifferences() {
+        double[] result = new double[min.length];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = max[i] - min[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,79 @@
+package gis.rytis.actions.statistics;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import junit.framework.TestCase;
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ResultCacheTest extends TestCase {
+    private File directory;
+    private final AtomicInteger calculations = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("result-cache").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public void testReusesResult() throws Exception {
+        SimpleFeature region = region(100);
+        assertEquals(Integer.valueOf(1), new ResultCache<Integer>(directory, "a", true).get(region, calculations::incrementAndGet));
+        assertEquals(Integer.valueOf(1), new ResultCache<Integer>(directory, "a", true).get(region, calculations::incrementAndGet));
+        assertEquals(1, calculations.get());
+    }
+
+    public void testReusesResultWithoutComparingFeatures() throws Exception {
+        SimpleFeature region = region(100);
+        assertEquals(Integer.valueOf(1), new ResultCache<Integer>(directory, "a", false).get(region, calculations::incrementAndGet));
+        assertEquals(Integer.valueOf(1), new ResultCache<Integer>(directory, "a", false).get(region, calculations::incrementAndGet));
+        assertEquals(Integer.valueOf(2), new ResultCache<Integer>(directory, "a", false).get(region(200), calculations::incrementAndGet));
+    }
+
+    // "Aa" and "BB" have the same hashCode, so they share a file name
+    public void testParametersWithSameHash() throws Exception {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        SimpleFeature region = region(100);
+        assertEquals(Integer.valueOf(1), new ResultCache<Integer>(directory, "Aa", true).get(region, calculations::incrementAndGet));
+        assertEquals(Integer.valueOf(2), new ResultCache<Integer>(directory, "BB", true).get(region, calculations::incrementAndGet));
+        assertEquals(Integer.valueOf(3), new ResultCache<Integer>(directory, "Aa", true).get(region, calculations::incrementAndGet));
+    }
+
+    public void testChangedRegion() throws Exception {
+        assertEquals(Integer.valueOf(1), new ResultCache<Integer>(directory, "a", true).get(region(100), calculations::incrementAndGet));
+        assertEquals(Integer.valueOf(2), new ResultCache<Integer>(directory, "a", true).get(region(200), calculations::incrementAndGet));
+    }
+
+    public void testBrokenFile() throws Exception {
+        SimpleFeature region = region(100);
+        new ResultCache<Integer>(directory, "a", true).get(region, calculations::incrementAndGet);
+        for (File file : directory.listFiles()) {
+            Files.write(file.toPath(), new byte[]{1, 2, 3});
+        }
+        assertEquals(Integer.valueOf(2), new ResultCache<Integer>(directory, "a", true).get(region, calculations::incrementAndGet));
+    }
+
+    private static SimpleFeature region(double size) throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("region", "geom:Polygon,SAV:String");
+        SimpleFeatureBuilder sfb = new SimpleFeatureBuilder(type);
+        sfb.set("geom", new GeometryFactory().toGeometry(new Envelope(0, size, 0, size)));
+        sfb.set("SAV", "Region");
+        return sfb.buildFeature("region.1");
+    }
+}
@@ -0,0 +1,71 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static gis.rytis.spatial.TestLayers.GF;
+
+public class AdjacencyGraphTest extends TestCase {
+    // Nodes 0..8 are a 3 x 3 grid of unit squares, node (row * 3 + column); node 9 stands apart
+    private AdjacencyGraph graph;
+
+    @Override
+    protected void setUp() throws Exception {
+        List<Geometry> squares = new ArrayList<>();
+        for (int row = 0; row < 3; ++row) {
+            for (int column = 0; column < 3; ++column) {
+                squares.add(GF.toGeometry(new Envelope(column, column + 1, row, row + 1)));
+            }
+        }
+        squares.add(GF.toGeometry(new Envelope(5, 6, 5, 6)));
+        graph = AdjacencyGraph.build(TestLayers.layer(squares.toArray(new Geometry[0])));
+    }
+
+    public void testNeighbours() {
+        assertEquals(10, graph.size());
+        assertTrue(Arrays.equals(new int[]{0, 1, 2, 3, 5, 6, 7, 8}, graph.getNeighbours(4)));
+        // Corners count as well as edges
+        assertTrue(Arrays.equals(new int[]{1, 3, 4}, graph.getNeighbours(0)));
+        assertEquals(0, graph.getNeighbours(9).length);
+        for (int i = 0; i < graph.size(); ++i) {
+            for (int j : graph.getNeighbours(i)) {
+                assertTrue(Arrays.binarySearch(graph.getNeighbours(j), i) >= 0);
+            }
+        }
+    }
+
+    public void testLocalMaxima() {
+        BitSet maxima = graph.getLocalMaxima(new double[]{5, 1, 0, 1, 1, 1, 0, 1, 5, 0});
+        assertEquals("{0, 8, 9}", maxima.toString());
+    }
+
+    public void testFile() throws Exception {
+        File file = File.createTempFile("graph", ".adj");
+        try {
+            AdjacencyGraph.write(graph, file, "a");
+            AdjacencyGraph read = AdjacencyGraph.read(file, "a", graph.size());
+            assertNotNull(read);
+            for (int i = 0; i < graph.size(); ++i) {
+                assertTrue(Arrays.equals(graph.getNeighbours(i), read.getNeighbours(i)));
+            }
+
+            // Another shapefile, another number of features or a broken file are built again
+            assertNull(AdjacencyGraph.read(file, "b", graph.size()));
+            assertNull(AdjacencyGraph.read(file, "a", graph.size() + 1));
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(raf.length() - 4);
+            }
+            assertNull(AdjacencyGraph.read(file, "a", graph.size()));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static gis.rytis.spatial.TestLayers.GF;
+import static gis.rytis.spatial.TestLayers.wkt;
+
+public class DistanceFieldTest extends TestCase {
+    // Pixels of 1 m, column x and row y from the bottom have their centre at (x + 0.5, y + 0.5)
+    private static final Envelope EXTENT = new Envelope(0, 20, 0, 20);
+
+    public void testDistance() {
+        DistanceField field = DistanceField.build(Collections.singletonList(wkt("LINESTRING (0 10.5, 20 10.5)")), EXTENT, 1);
+        assertEquals(0, field.getDistance(5.5, 10.5), 1e-9);
+        assertEquals(3, field.getDistance(5.5, 7.5), 0.1);
+        assertEquals(Double.POSITIVE_INFINITY, field.getDistance(-5, 10.5));
+    }
+
+    public void testNothingAndEverythingNear() {
+        DistanceField field = DistanceField.build(Collections.singletonList(wkt("LINESTRING (0 10.5, 20 10.5)")), EXTENT, 1);
+        assertNull(field.within(wkt("POLYGON ((1 1, 5 1, 5 5, 1 1))"), 2));
+        Geometry geometry = wkt("POLYGON ((1 9, 5 9, 5 12, 1 9))");
+        assertSame(geometry, field.within(geometry, 2));
+    }
+
+    // Marked pixels that touch only at their corners
+    public void testCheckerboard() {
+        List<Geometry> pixels = new ArrayList<>();
+        for (int x = 4; x < 12; ++x) {
+            for (int y = 4; y < 12; ++y) {
+                if ((x + y) % 2 == 0) {
+                    pixels.add(pixel(x, y));
+                }
+            }
+        }
+        DistanceField field = DistanceField.build(pixels, EXTENT, 1);
+        assertWithin(field, wkt("POLYGON ((3.5 3.5, 12.5 3.5, 12.5 12.5, 3.5 12.5, 3.5 3.5))"), 0, 32);
+        assertWithin(field, wkt("POLYGON ((5.3 4.2, 10.7 6.1, 7.2 11.9, 5.3 4.2))"), 0, -1);
+    }
+
+    // A ring of pixels around a hole with one marked pixel in the middle
+    public void testHoles() {
+        List<Geometry> lines = Arrays.asList(
+                wkt("LINESTRING (5.5 5.5, 10.5 5.5, 10.5 10.5, 5.5 10.5, 5.5 5.5)"),
+                pixel(8, 8));
+        DistanceField field = DistanceField.build(lines, EXTENT, 1);
+        assertWithin(field, wkt("POLYGON ((0 0, 20 0, 20 20, 0 20, 0 0))"), 0, 21);
+        assertWithin(field, wkt("POLYGON ((6.5 4, 12 4, 12 12, 6.5 12, 6.5 4))"), 0, -1);
+    }
+
+    // The geometry reaches past the field, pixels outside it are never near
+    public void testWindowAtFieldEdge() {
+        List<Geometry> lines = Arrays.asList(wkt("LINESTRING (0.5 0.5, 0.5 19.5)"), wkt("LINESTRING (0.5 19.5, 19.5 19.5)"));
+        DistanceField field = DistanceField.build(lines, EXTENT, 1);
+        assertWithin(field, wkt("POLYGON ((-5 -5, 4 -5, 4 25, -5 25, -5 -5))"), 1, 76);
+        assertWithin(field, wkt("POLYGON ((-5 15, 25 15, 25 25, -5 25, -5 15))"), 2.5, -1);
+    }
+
+    public void testRandomMasks() {
+        Random random = new Random(1);
+        for (int i = 0; i < 200; ++i) {
+            List<Geometry> pixels = new ArrayList<>();
+            for (int x = 0; x < 20; ++x) {
+                for (int y = 0; y < 20; ++y) {
+                    if (random.nextInt(3) == 0) {
+                        pixels.add(pixel(x, y));
+                    }
+                }
+            }
+            DistanceField field = DistanceField.build(pixels, EXTENT, 1);
+            Coordinate[] triangle = new Coordinate[4];
+            for (int j = 0; j < 3; ++j) {
+                triangle[j] = new Coordinate(random.nextDouble() * 24 - 2, random.nextDouble() * 24 - 2);
+            }
+            triangle[3] = triangle[0];
+            assertWithin(field, GF.createPolygon(triangle), random.nextInt(2), -1);
+        }
+    }
+
+    // Compares within() with the union of the pixels whose centre is near enough, cut by the geometry
+    private static void assertWithin(DistanceField field, Geometry geometry, double distance, double pixelCount) {
+        List<Geometry> near = new ArrayList<>();
+        for (int x = 0; x < EXTENT.getWidth(); ++x) {
+            for (int y = 0; y < EXTENT.getHeight(); ++y) {
+                if (field.getDistance(x + 0.5, y + 0.5) <= distance) {
+                    near.add(GF.toGeometry(new Envelope(x, x + 1, y, y + 1)));
+                }
+            }
+        }
+        if (pixelCount >= 0) {
+            assertEquals(pixelCount, near.size(), 0);
+        }
+        Geometry expected = GF.buildGeometry(near).union().intersection(geometry);
+
+        Geometry result = field.within(geometry, distance);
+        if (expected.isEmpty()) {
+            assertNull(result);
+            return;
+        }
+        assertNotNull(result);
+        assertTrue(result.isValid());
+        assertEquals(expected.getArea(), result.getArea(), 1e-6);
+        assertEquals(0, expected.symDifference(result).getArea(), 1e-6);
+    }
+
+    private static Geometry pixel(int x, int y) {
+        Coordinate centre = new Coordinate(x + 0.5, y + 0.5);
+        return GF.createLineString(new Coordinate[]{centre, centre});
+    }
+}
@@ -0,0 +1,94 @@
+package gis.rytis.spatial;
+
+import junit.framework.TestCase;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.collection.ListFeatureCollection;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LayerCacheTest extends TestCase {
+    private final LayerCache<Double, String> cache = new LayerCache<>();
+    private final AtomicInteger builds = new AtomicInteger();
+
+    public void testBuildsOncePerKey() throws Exception {
+        FeatureSource source = source();
+        assertEquals("10.0", cache.get(source, 10.0, () -> build(10.0)));
+        assertEquals("10.0", cache.get(source, 10.0, () -> build(10.0)));
+        assertEquals("20.0", cache.get(source, 20.0, () -> build(20.0)));
+        assertEquals("10.0", cache.get(source, 10.0, () -> build(10.0)));
+        assertEquals(2, builds.get());
+
+        assertEquals("10.0", cache.get(source(), 10.0, () -> build(10.0)));
+        assertEquals(3, builds.get());
+    }
+
+    public void testValueWithoutKey() throws Exception {
+        FeatureSource source = source();
+        LayerCache<Void, String> single = new LayerCache<>();
+        assertEquals("1.0", single.get(source, () -> build(1.0)));
+        assertEquals("1.0", single.get(source, () -> build(2.0)));
+        assertEquals(1, builds.get());
+    }
+
+    public void testConcurrentCallsWaitForOneBuild() throws Exception {
+        FeatureSource source = source();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; ++i) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get(source, 10.0, () -> slowBuild(10.0));
+                }));
+            }
+            start.countDown();
+            for (Future<String> result : results) {
+                assertEquals("10.0", result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, builds.get());
+    }
+
+    public void testFailureIsNotKept() throws Exception {
+        FeatureSource source = source();
+        try {
+            cache.get(source, 10.0, () -> {
+                throw new IOException("broken");
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals("broken", e.getMessage());
+        }
+        assertEquals("10.0", cache.get(source, 10.0, () -> build(10.0)));
+    }
+
+    private String slowBuild(double key) throws IOException {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        return build(key);
+    }
+
+    private String build(double key) {
+        builds.incrementAndGet();
+        return String.valueOf(key);
+    }
+
+    private static FeatureSource source() throws Exception {
+        return DataUtilities.source(new ListFeatureCollection(DataUtilities.createType("test", "geom:Point")));
+    }
+}
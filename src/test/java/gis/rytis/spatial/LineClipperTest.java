@@ -0,0 +1,106 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static gis.rytis.spatial.TestLayers.GF;
+import static gis.rytis.spatial.TestLayers.wkt;
+
+public class LineClipperTest extends TestCase {
+    private static final Geometry SQUARE = wkt("POLYGON ((0 0, 100 0, 100 100, 0 100, 0 0))");
+    private static final Geometry WITH_HOLE = wkt("POLYGON ((0 0, 100 0, 100 100, 0 100, 0 0), (30 30, 70 30, 70 70, 30 70, 30 30))");
+    private static final Geometry TWO_PARTS = wkt("MULTIPOLYGON (((0 0, 40 0, 40 100, 0 100, 0 0)), ((60 0, 100 0, 80 100, 60 0)))");
+
+    public void testInsideCells() {
+        assertSameLength(SQUARE, wkt("LINESTRING (-10 12, 37.5 50, 50 62.5, 110 80)"));
+        assertSameLength(SQUARE, wkt("MULTILINESTRING ((10 10, 20 20), (24 1, 26 99))"));
+    }
+
+    // Vertices exactly on the lines between cells and on the edges of the region
+    public void testVerticesOnBorders() {
+        String line = "LINESTRING (0 0, 25 25, 50 30, 75 0, 100 50, 50 100, 30 50, 70 40)";
+        assertSameLength(SQUARE, wkt(line));
+        assertSameLength(WITH_HOLE, wkt(line));
+        assertSameLength(TWO_PARTS, wkt(line));
+    }
+
+    public void testHole() {
+        assertSameLength(WITH_HOLE, wkt("LINESTRING (10 45, 90 45)"));
+        assertSameLength(WITH_HOLE, wkt("LINESTRING (20 20, 80 80)"));
+        assertSameLength(WITH_HOLE, wkt("LINESTRING (40 40, 60 45)"));
+    }
+
+    public void testMultiPolygon() {
+        assertSameLength(TWO_PARTS, wkt("LINESTRING (-5 55, 105 55)"));
+        assertSameLength(TWO_PARTS, wkt("LINESTRING (52 -5, 52 105)"));
+        assertSameLength(TWO_PARTS, wkt("LINESTRING (10 10, 90 90)"));
+    }
+
+    // A line along the border of two cells belongs to one of them, it is counted once for the region
+    public void testCollinearWithCellBorder() {
+        for (Geometry region : new Geometry[]{SQUARE, WITH_HOLE, TWO_PARTS}) {
+            for (String line : new String[]{"LINESTRING (5 50, 95 50)", "LINESTRING (25 5, 25 95)", "LINESTRING (10 75, 50 75, 50 10)"}) {
+                double total = 0;
+                for (RegionCell cell : RegionGrid.fixed(region, 4, 4)) {
+                    total += new LineClipper(cell).length(wkt(line));
+                }
+                assertEquals(region + " " + line, wkt(line).intersection(region).getLength(), total, 1e-6);
+            }
+        }
+    }
+
+    // The top and right edges of the region belong to no cell above or to the right, the cells below and to
+    // the left of them take the line
+    public void testAlongRegionOutline() {
+        assertOutlineLength(SQUARE, "LINESTRING (100 10, 100 90)", 80);
+        assertOutlineLength(SQUARE, "LINESTRING (10 100, 90 100)", 80);
+        assertOutlineLength(SQUARE, "LINESTRING (0 10, 0 90)", 80);
+        assertOutlineLength(WITH_HOLE, "LINESTRING (30 70, 70 70, 70 30)", 80);
+        assertOutlineLength(WITH_HOLE, "LINESTRING (30 40, 30 60, 10 60)", 40);
+        assertOutlineLength(wkt("POLYGON ((0 0, 100 0, 100 50, 50 50, 50 100, 0 100, 0 0))"),
+                "LINESTRING (10 50, 90 50)", 80);
+        assertOutlineLength(wkt("POLYGON ((0 0, 100 0, 100 50, 50 50, 50 100, 0 100, 0 0))"),
+                "LINESTRING (50 10, 50 90)", 80);
+
+        // The whole region in one cell
+        assertEquals(80, new LineClipper(RegionGrid.whole(SQUARE)).length(wkt("LINESTRING (100 10, 100 90)")), 1e-9);
+    }
+
+    public void testRandomLines() {
+        Random random = new Random(1);
+        for (Geometry region : new Geometry[]{SQUARE, WITH_HOLE, TWO_PARTS}) {
+            for (int i = 0; i < 100; ++i) {
+                Coordinate[] coordinates = new Coordinate[2 + random.nextInt(6)];
+                for (int j = 0; j < coordinates.length; ++j) {
+                    coordinates[j] = new Coordinate(random.nextDouble() * 120 - 10, random.nextDouble() * 120 - 10);
+                }
+                assertSameLength(region, GF.createLineString(coordinates));
+            }
+        }
+    }
+
+    private static void assertOutlineLength(Geometry region, String line, double expected) {
+        assertEquals(expected, wkt(line).intersection(region).getLength(), 1e-9);
+        for (List<RegionCell> cells : Arrays.asList(RegionGrid.fixed(region, 4, 4), RegionGrid.fixed(region, 3, 3))) {
+            double total = 0;
+            for (RegionCell cell : cells) {
+                total += new LineClipper(cell).length(wkt(line));
+            }
+            assertEquals(region + " " + line, expected, total, 1e-6);
+        }
+    }
+
+    // Every cell of a 4 x 4 grid gives the length of the intersection
+    private static void assertSameLength(Geometry region, Geometry line) {
+        List<RegionCell> cells = RegionGrid.fixed(region, 4, 4);
+        for (RegionCell cell : cells) {
+            double expected = line.intersection(cell.getClip()).getLength();
+            assertEquals(line + " in " + cell.getClip(), expected, new LineClipper(cell).length(line), 1e-6);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.operation.union.UnaryUnionOp;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static gis.rytis.spatial.TestLayers.GF;
+import static gis.rytis.spatial.TestLayers.wkt;
+
+public class OverlapUnionTest extends TestCase {
+    public void testSeparatePolygonsAreKept() {
+        Geometry a = wkt("POLYGON ((0 0, 1 0, 1 1, 0 1, 0 0))");
+        Geometry b = wkt("POLYGON ((2 0, 3 0, 3 1, 2 1, 2 0))");
+        List<Geometry> result = OverlapUnion.union(Arrays.asList(a, b));
+        assertEquals(2, result.size());
+        assertTrue(result.contains(a) && result.contains(b));
+    }
+
+    // a and c meet only through b, touching along an edge is enough to be merged
+    public void testChainIsOnePiece() {
+        Geometry a = wkt("POLYGON ((0 0, 2 0, 2 2, 0 2, 0 0))");
+        Geometry b = wkt("POLYGON ((1 1, 4 1, 4 3, 1 3, 1 1))");
+        Geometry c = wkt("POLYGON ((4 0, 6 0, 6 2, 4 2, 4 0))");
+        Geometry d = wkt("POLYGON ((10 10, 11 10, 11 11, 10 11, 10 10))");
+        List<Geometry> result = OverlapUnion.union(Arrays.asList(a, b, c, d));
+        assertEquals(2, result.size());
+        assertSameArea(UnaryUnionOp.union(Arrays.asList(a, b, c, d)), result);
+    }
+
+    public void testRandomSquares() {
+        List<Geometry> squares = randomSquares(300, 2);
+        assertSameArea(UnaryUnionOp.union(squares), OverlapUnion.union(squares));
+    }
+
+    public void testTiledUnion() {
+        assertTrue(OverlapUnion.tiledUnion(new ArrayList<>(), GF).isEmpty());
+
+        List<Geometry> buffers = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 500; ++i) {
+            buffers.add(GF.createPoint(new Coordinate(random.nextDouble() * 100, random.nextDouble() * 100)).buffer(3));
+        }
+        Geometry expected = UnaryUnionOp.union(buffers);
+        Geometry result = OverlapUnion.tiledUnion(buffers, GF);
+        assertTrue(result.isValid());
+        assertEquals(expected.getArea(), result.getArea(), 1e-6);
+        assertEquals(0, expected.symDifference(result).getArea(), 1e-6);
+    }
+
+    // The pieces do not overlap and cover the same area as the union
+    private static void assertSameArea(Geometry expected, List<Geometry> pieces) {
+        double area = 0;
+        for (int i = 0; i < pieces.size(); ++i) {
+            area += pieces.get(i).getArea();
+            for (int j = i + 1; j < pieces.size(); ++j) {
+                assertEquals(0, pieces.get(i).intersection(pieces.get(j)).getArea(), 1e-9);
+            }
+        }
+        assertEquals(expected.getArea(), area, 1e-6);
+    }
+
+    private static List<Geometry> randomSquares(int count, double size) {
+        Random random = new Random(1);
+        List<Geometry> result = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            double x = random.nextDouble() * 100;
+            double y = random.nextDouble() * 100;
+            result.add(GF.toGeometry(new Envelope(x, x + size, y, y + size)));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,66 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static gis.rytis.spatial.TestLayers.GF;
+import static gis.rytis.spatial.TestLayers.wkt;
+
+public class RegionGridTest extends TestCase {
+    private static final Geometry SQUARE = wkt("POLYGON ((0 0, 100 0, 100 100, 0 100, 0 0))");
+    private static final Geometry TRIANGLE = wkt("POLYGON ((0 0, 100 0, 0 100, 0 0))");
+
+    public void testParseMode() {
+        assertEquals(RegionGrid.Mode.FIXED, RegionGrid.parseMode("fixed"));
+        assertEquals(RegionGrid.Mode.ADAPTIVE, RegionGrid.parseMode(" Adaptive "));
+        assertEquals(RegionGrid.Mode.ADAPTIVE, RegionGrid.parseMode("quadtree"));
+    }
+
+    public void testFixedCellsCoverRegion() {
+        List<RegionCell> cells = RegionGrid.fixed(TRIANGLE, 7, 5);
+        assertEquals(TRIANGLE.getArea(), clipArea(cells), 1e-6);
+        for (RegionCell cell : cells) {
+            assertEquals(cell.isInside(), TRIANGLE.covers(cell.getGeometry()));
+        }
+    }
+
+    public void testAdaptiveSplitsToBudget() throws Exception {
+        List<Geometry> squares = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            for (int j = 0; j < 10; ++j) {
+                squares.add(GF.toGeometry(new Envelope(i * 10 + 2, i * 10 + 8, j * 10 + 2, j * 10 + 8)));
+            }
+        }
+        IndexedLayer layer = TestLayers.layer(squares.toArray(new Geometry[0]));
+
+        List<RegionCell> cells = RegionGrid.adaptive(TRIANGLE, CellBudget.features(4), layer);
+        assertTrue(cells.size() > 1);
+        assertEquals(TRIANGLE.getArea(), clipArea(cells), 1e-6);
+        for (RegionCell cell : cells) {
+            assertTrue(layer.query(cell.getEnvelope()).size() <= 4);
+        }
+    }
+
+    // One polygon over the vertex budget is in every quarter, splitting it further does not help
+    public void testAdaptiveStopsWhenOneFeatureDominates() throws Exception {
+        Geometry circle = GF.createPoint(new Coordinate(50, 50)).buffer(60, 250);
+        IndexedLayer layer = TestLayers.layer(circle);
+
+        List<RegionCell> cells = RegionGrid.adaptive(SQUARE, CellBudget.vertices(100), layer);
+        assertEquals(1, cells.size());
+        assertTrue(cells.get(0).isInside());
+    }
+
+    private static double clipArea(List<RegionCell> cells) {
+        double area = 0;
+        for (RegionCell cell : cells) {
+            area += cell.getClip().getArea();
+        }
+        return area;
+    }
+}
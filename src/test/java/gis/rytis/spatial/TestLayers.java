@@ -0,0 +1,48 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import java.io.IOException;
+
+// In-memory layers and geometries for the spatial tests
+class TestLayers {
+    static final GeometryFactory GF = new GeometryFactory();
+
+    static Geometry wkt(String text) {
+        try {
+            return new WKTReader(GF).read(text);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(text, e);
+        }
+    }
+
+    static IndexedLayer layer(Geometry... geometries) throws IOException {
+        return layer(new double[geometries.length], geometries);
+    }
+
+    // Every feature has a "value" attribute, used as the height by the ZonalRange tests
+    static IndexedLayer layer(double[] values, Geometry... geometries) throws IOException {
+        SimpleFeatureType type;
+        try {
+            type = DataUtilities.createType("test", "geom:Geometry,value:Double");
+        } catch (SchemaException e) {
+            throw new IOException(e);
+        }
+        ListFeatureCollection collection = new ListFeatureCollection(type);
+        for (int i = 0; i < geometries.length; ++i) {
+            SimpleFeatureBuilder sfb = new SimpleFeatureBuilder(type);
+            sfb.set("geom", geometries[i]);
+            sfb.set("value", values[i]);
+            collection.add(sfb.buildFeature("test." + (i + 1)));
+        }
+        return new IndexedLayer(collection);
+    }
+}
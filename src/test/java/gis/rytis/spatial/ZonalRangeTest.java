@@ -0,0 +1,65 @@
+package gis.rytis.spatial;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static gis.rytis.spatial.TestLayers.GF;
+import static gis.rytis.spatial.TestLayers.wkt;
+
+public class ZonalRangeTest extends TestCase {
+    public void testRange() throws Exception {
+        IndexedLayer heights = TestLayers.layer(new double[]{10, 20, 30, 40},
+                wkt("POINT (1 1)"), wkt("POINT (2 2)"), wkt("POINT (9 1)"), wkt("LINESTRING (0 5, 10 5)"));
+        List<Geometry> zones = Arrays.asList(
+                wkt("POLYGON ((0 0, 3 0, 3 3, 0 3, 0 0))"),
+                // The envelope holds (9 1), the triangle does not
+                wkt("POLYGON ((0 0, 10 10, 0 10, 0 0))"),
+                wkt("POLYGON ((20 20, 21 20, 21 21, 20 20))"),
+                // (2 2) on the border counts
+                wkt("POLYGON ((2 2, 4 2, 4 4, 2 4, 2 2))"));
+        ZonalRange range = ZonalRange.of(zones, heights, "value");
+
+        assertEquals(10, range.getMin(0), 0);
+        assertEquals(20, range.getMax(0), 0);
+        assertEquals(10, range.getMin(1), 0);
+        assertEquals(40, range.getMax(1), 0);
+        assertTrue(Double.isNaN(range.getMin(2)));
+        assertTrue(Double.isNaN(range.getDifferences()[2]));
+        assertEquals(20, range.getMin(3), 0);
+        assertEquals(0, range.getDifferences()[3], 0);
+    }
+
+    public void testRandomZones() throws Exception {
+        Random random = new Random(1);
+        Geometry[] points = new Geometry[2000];
+        double[] values = new double[points.length];
+        for (int i = 0; i < points.length; ++i) {
+            points[i] = GF.createPoint(new Coordinate(random.nextDouble() * 100, random.nextDouble() * 100));
+            values[i] = random.nextInt(1000);
+        }
+        List<Geometry> zones = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            zones.add(GF.createPoint(new Coordinate(random.nextDouble() * 100, random.nextDouble() * 100)).buffer(random.nextDouble() * 10));
+        }
+
+        ZonalRange range = ZonalRange.of(zones, TestLayers.layer(values, points), "value");
+        for (int i = 0; i < zones.size(); ++i) {
+            double min = Double.NaN;
+            double max = Double.NaN;
+            for (int j = 0; j < points.length; ++j) {
+                if (zones.get(i).intersects(points[j])) {
+                    min = Double.isNaN(min) ? values[j] : Math.min(min, values[j]);
+                    max = Double.isNaN(max) ? values[j] : Math.max(max, values[j]);
+                }
+            }
+            assertEquals(min, range.getMin(i), 0);
+            assertEquals(max, range.getMax(i), 0);
+        }
+    }
+}